@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of a whole diff and of each of its phases over generated
+ * documents. Run with <code>-prof gc</code> to also see allocation per
+ * operation.
+ * <p>
+ * Phases are measured apart from each other: each one starts from the state
+ * the previous phases leave, prepared once in {@link #setUp()}.
+ * <ul>
+ * <li>tokenize: splitting both texts into words</li>
+ * <li>index: interning both texts' words and indexing the new ones</li>
+ * <li>match: finding the matching blocks and operations</li>
+ * <li>render: writing the HTML</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiffBenchmark {
+
+	@Param({ "1000", "10000" })
+	public int words;
+
+	@Param({ "0.1", "0.3" })
+	public double tagDensity;
+
+	@Param({ "0.01", "0.1" })
+	public double editRate;
+
+	@Param({ "LONGEST_MATCH", "MYERS", "BLOCKS" })
+	public String algorithm;
+
+	private String oldText, newText;
+	private DiffAlgorithm diffAlgorithm;
+	private DiffEngine engine;
+	private Words oldWords, newWords;
+	private Diff matchDiff, renderDiff;
+	private EditScript operations;
+
+	@Setup
+	public void setUp() throws Exception {
+		String[] documents = new HtmlCorpusGenerator(42, words, tagDensity, editRate).generate();
+		oldText = documents[0];
+		newText = documents[1];
+		diffAlgorithm = (DiffAlgorithm) DiffAlgorithm.class.getField(algorithm).get(null);
+		engine = new DiffEngine(diffAlgorithm);
+
+		oldWords = Words.tokenize(oldText);
+		newWords = Words.tokenize(newText);
+
+		matchDiff = new Diff(oldText, newText, diffAlgorithm);
+		matchDiff.split();
+
+		renderDiff = new Diff(oldText, newText, diffAlgorithm);
+		renderDiff.split();
+		operations = renderDiff.operations();
+	}
+
+	@Benchmark
+	public String build() {
+		return new Diff(oldText, newText, diffAlgorithm).build();
+	}
+
+	/**
+	 * Like {@link #build()}, but reusing the engine's per-thread arrays.
+	 */
+	@Benchmark
+	public String engine() {
+		return engine.diff(oldText, newText);
+	}
+
+	@Benchmark
+	public void tokenize(Blackhole blackhole) {
+		blackhole.consume(Words.tokenize(oldText));
+		blackhole.consume(Words.tokenize(newText));
+	}
+
+	@Benchmark
+	public WordIndex index(Blackhole blackhole) {
+		SymbolTable symbols = new SymbolTable();
+		blackhole.consume(symbols.intern(oldWords));
+		int[] newWordIds = symbols.intern(newWords);
+		return WordIndex.build(newWordIds, symbols.size());
+	}
+
+	@Benchmark
+	public EditScript match() {
+		return matchDiff.operations();
+	}
+
+	@Benchmark
+	public StringBuilder render() throws IOException {
+		StringBuilder out = new StringBuilder();
+		renderDiff.render(operations, out);
+		return out;
+	}
+
+}
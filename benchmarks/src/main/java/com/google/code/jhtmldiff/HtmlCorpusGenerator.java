@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Makes pairs of HTML documents for benchmarks: an original and an edited
+ * revision of it. The same settings always give the same documents.
+ * <p>
+ * Documents are headings, paragraphs, lists and tables of words drawn from a
+ * skewed vocabulary, so some words repeat often as in real text. Words are
+ * wrapped in inline tags at the given tag density. Revisions replace, delete
+ * or insert words at the given edit rate, and add or drop whole blocks at a
+ * tenth of it.
+ */
+public final class HtmlCorpusGenerator {
+
+	private static final String[] INLINE_TAGS = new String[] { "<b>", "</b>", "<i>", "</i>", "<a href=\"#w\">",
+			"</a>", "<span class=\"x\">", "</span>", "<strong>", "</strong>" };
+
+	private final long seed;
+	private final int words;
+	private final double tagDensity;
+	private final double editRate;
+
+	/**
+	 * @param words number of words in the original document, about.
+	 * @param tagDensity chance of each word being wrapped in an inline tag, 0 to 1.
+	 * @param editRate chance of each word being edited in the revision, 0 to 1.
+	 */
+	public HtmlCorpusGenerator(long seed, int words, double tagDensity, double editRate) {
+		this.seed = seed;
+		this.words = words;
+		this.tagDensity = tagDensity;
+		this.editRate = editRate;
+	}
+
+	/**
+	 * @return the original document and its revision, not null.
+	 */
+	public String[] generate() {
+		Random random = new Random(seed);
+		String[] vocabulary = Vocabulary(random, 2000);
+		List<List<String>> blocks = new ArrayList<List<String>>();
+		for (int count = 0; count < words;) {
+			List<String> block = new ArrayList<String>();
+			int length = 5 + random.nextInt(60);
+			for (int i = 0; i < length; i++) {
+				block.add(this.Word(random, vocabulary));
+			}
+			blocks.add(block);
+			count += length;
+		}
+
+		StringBuilder oldText = new StringBuilder();
+		StringBuilder newText = new StringBuilder();
+		for (int b = 0; b < blocks.size(); b++) {
+			int kind = random.nextInt(10);
+			List<String> block = blocks.get(b);
+			double roll = random.nextDouble();
+			if (roll < editRate / 20) {
+				Block(oldText, kind, block);
+				continue;
+			}
+			if (roll < editRate / 10) {
+				List<String> inserted = new ArrayList<String>();
+				for (int i = 0; i < 20; i++) {
+					inserted.add(this.Word(random, vocabulary));
+				}
+				Block(newText, random.nextInt(10), inserted);
+			}
+			Block(oldText, kind, block);
+			Block(newText, kind, this.Edit(random, vocabulary, block));
+		}
+		return new String[] { oldText.toString(), newText.toString() };
+	}
+
+	private List<String> Edit(Random random, String[] vocabulary, List<String> block) {
+		List<String> edited = new ArrayList<String>(block.size());
+		for (String word : block) {
+			if (random.nextDouble() >= editRate) {
+				edited.add(word);
+				continue;
+			}
+			switch (random.nextInt(3)) {
+				case 0:
+					edited.add(this.Word(random, vocabulary));
+					break;
+				case 1:
+					break;
+				default:
+					edited.add(word);
+					edited.add(this.Word(random, vocabulary));
+					break;
+			}
+		}
+		return edited;
+	}
+
+	private String Word(Random random, String[] vocabulary) {
+		// Cubing skews picks towards the start, so a few words are very common.
+		double r = random.nextDouble();
+		String word = vocabulary[(int) (r * r * r * vocabulary.length)];
+		if (random.nextDouble() < tagDensity) {
+			int tag = random.nextInt(INLINE_TAGS.length / 2) * 2;
+			return INLINE_TAGS[tag] + word + INLINE_TAGS[tag + 1];
+		}
+		return word;
+	}
+
+	private static void Block(StringBuilder out, int kind, List<String> words) {
+		String open, close, separator = null;
+		if (kind == 0) {
+			open = "<h2>";
+			close = "</h2>\n";
+		}
+		else if (kind == 1) {
+			open = "<ul>\n<li>";
+			close = "</li>\n</ul>\n";
+			separator = "</li>\n<li>";
+		}
+		else if (kind == 2) {
+			open = "<table>\n<tr><td>";
+			close = "</td></tr>\n</table>\n";
+			separator = "</td><td>";
+		}
+		else {
+			open = "<p>";
+			close = "</p>\n";
+		}
+		out.append(open);
+		for (int i = 0; i < words.size(); i++) {
+			if (i > 0) {
+				// Lists and tables put a few words in each item or cell.
+				out.append(separator != null && i % 4 == 0 ? separator : " ");
+			}
+			out.append(words.get(i));
+		}
+		out.append(close);
+	}
+
+	private static String[] Vocabulary(Random random, int size) {
+		String letters = "etaoinshrdlucmfwypvbgkqjxz";
+		String[] vocabulary = new String[size];
+		for (int i = 0; i < size; i++) {
+			StringBuilder word = new StringBuilder();
+			int length = 1 + random.nextInt(9);
+			for (int j = 0; j < length; j++) {
+				// Skewed towards common letters.
+				double r = random.nextDouble();
+				word.append(letters.charAt((int) (r * r * letters.length())));
+			}
+			vocabulary[i] = word.toString();
+		}
+		return vocabulary;
+	}
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for one diff. Only loaded by {@link JfrDiffListener},
+ * and only where JFR exists.
+ */
+@Name("com.google.code.jhtmldiff.Diff")
+@Label("HTML Diff")
+@Category("jhtmldiff")
+@Description("One diff, with the time spent in each phase and the size of its input and output")
+final class DiffEvent extends Event {
+
+	@Label("Total Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long totalNanos;
+
+	@Label("Tokenize Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long tokenizeNanos;
+
+	@Label("Match Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long matchNanos;
+
+	@Label("Render Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long renderNanos;
+
+	@Label("Old Length")
+	@Description("Characters in the old text")
+	int oldLength;
+
+	@Label("New Length")
+	@Description("Characters in the new text")
+	int newLength;
+
+	@Label("Old Tokens")
+	int oldTokens;
+
+	@Label("New Tokens")
+	int newTokens;
+
+	@Label("Matching Blocks")
+	int matchingBlocks;
+
+	@Label("Changes")
+	@Description("Insert, delete and replace operations")
+	int changes;
+
+	@Label("Output Length")
+	@Description("Characters written")
+	long outputLength;
+
+	@Label("Max Depth")
+	int maxDepth;
+
+	@Label("Degraded")
+	@Description("Ran out of its budget and was finished coarsely")
+	boolean degraded;
+
+}
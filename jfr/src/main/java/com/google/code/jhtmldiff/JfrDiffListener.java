@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import com.google.code.jhtmldiff.Diff.Action;
+
+/**
+ * Listener that emits a <code>com.google.code.jhtmldiff.Diff</code> flight
+ * recorder event for every diff, with the statistics as fields. The event's
+ * own duration is not the diff's; use its Total Time field.
+ * <p>
+ * Ships in the separate jhtmldiff-jfr jar, which needs Java 11 or later, so
+ * the library itself still builds and runs on older JVMs.
+ */
+public final class JfrDiffListener implements DiffListener {
+
+	private static final Action[] ACTIONS = Action.values();
+
+	/**
+	 * @throws UnsupportedOperationException if JFR is not available.
+	 */
+	public JfrDiffListener() {
+		if (!isSupported()) {
+			throw new UnsupportedOperationException("JFR is not available in this JVM");
+		}
+	}
+
+	/**
+	 * @return whether this JVM has JFR events.
+	 */
+	public static boolean isSupported() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+
+	public void diffCompleted(DiffStatistics statistics) {
+		DiffEvent event = new DiffEvent();
+		if (!event.shouldCommit()) {
+			return;
+		}
+		event.totalNanos = statistics.getTotalNanos();
+		event.tokenizeNanos = statistics.getTokenizeNanos();
+		event.matchNanos = statistics.getMatchNanos();
+		event.renderNanos = statistics.getRenderNanos();
+		event.oldLength = statistics.getOldLength();
+		event.newLength = statistics.getNewLength();
+		event.oldTokens = statistics.getOldTokens();
+		event.newTokens = statistics.getNewTokens();
+		event.matchingBlocks = statistics.getMatchingBlocks();
+		for (Action action : ACTIONS) {
+			if (action != Action.none && action != Action.equal) {
+				event.changes += statistics.getOperations(action);
+			}
+		}
+		event.outputLength = statistics.getOutputLength();
+		event.maxDepth = statistics.getMaxDepth();
+		event.degraded = statistics.isDegraded();
+		event.commit();
+	}
+
+}
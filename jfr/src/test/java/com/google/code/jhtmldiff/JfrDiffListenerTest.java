@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+package com.google.code.jhtmldiff;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+
+public class JfrDiffListenerTest {
+
+	@Test
+	public void shouldRecordDiffEvent() throws Exception {
+		Recording recording = new Recording();
+		File file = File.createTempFile("jhtmldiff", ".jfr");
+		try {
+			recording.enable("com.google.code.jhtmldiff.Diff");
+			recording.start();
+			DiffEngine.DEFAULT.withListener(new JfrDiffListener()).diff("<p>a b c</p>", "<p>a x c d</p>");
+			recording.stop();
+			recording.dump(file.toPath());
+
+			List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+			for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+				if (event.getEventType().getName().equals("com.google.code.jhtmldiff.Diff")) {
+					events.add(event);
+				}
+			}
+			assertEquals(1, events.size());
+			RecordedEvent event = events.get(0);
+			assertEquals(12, event.getInt("oldLength"));
+			assertEquals(14, event.getInt("newLength"));
+			assertEquals(7, event.getInt("oldTokens"));
+			assertEquals(9, event.getInt("newTokens"));
+			// b replaced by x, then d inserted.
+			assertEquals(2, event.getInt("changes"));
+			assertTrue(event.getInt("matchingBlocks") > 0);
+			assertTrue(event.getLong("outputLength") > 14);
+			assertTrue(event.getDuration("totalNanos").toNanos() > 0);
+			assertFalse(event.getBoolean("degraded"));
+		}
+		finally {
+			recording.close();
+			file.delete();
+		}
+	}
+
+}
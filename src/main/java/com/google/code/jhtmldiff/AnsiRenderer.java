@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import java.io.IOException;
+
+/**
+ * Renders the new text as is, with deleted text in red and struck through and
+ * inserted text in green, for a terminal that understands ANSI escapes.
+ */
+final class AnsiRenderer implements DiffRenderer {
+
+	static final String DELETED = "\u001b[31;9m", INSERTED = "\u001b[32m", RESET = "\u001b[0m";
+
+	public void render(EditScript script, Appendable out) throws IOException {
+		String oldText = script.getOldText();
+		String newText = script.getNewText();
+		for (int i = 0; i < script.size(); i++) {
+			switch (script.action(i)) {
+				case equal:
+					out.append(newText, script.charStartInNew(i), script.charEndInNew(i));
+					break;
+				case delete:
+					AppendColored(out, DELETED, oldText, script.charStartInOld(i), script.charEndInOld(i));
+					break;
+				case insert:
+					AppendColored(out, INSERTED, newText, script.charStartInNew(i), script.charEndInNew(i));
+					break;
+				case replace:
+					AppendColored(out, DELETED, oldText, script.charStartInOld(i), script.charEndInOld(i));
+					AppendColored(out, INSERTED, newText, script.charStartInNew(i), script.charEndInNew(i));
+					break;
+				default:
+					break;
+			}
+		}
+	}
+
+	private static void AppendColored(Appendable out, String color, String text, int start, int end)
+			throws IOException {
+		out.append(color).append(text, start, end).append(RESET);
+	}
+
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import java.util.Arrays;
+
+/**
+ * Diffs block by block before word by word. Both documents are cut into
+ * blocks at block-level tags such as &lt;p&gt;, &lt;li&gt;, &lt;tr&gt; or
+ * &lt;div&gt;, each block is reduced to an id by hashing its words, and the
+ * inner algorithm first matches the sequences of block ids. Only the words of
+ * blocks left unmatched between two matched ones are then diffed word by word.
+ * <p>
+ * Pages where a few blocks change thus cost about as much as those blocks,
+ * rather than the whole page. In return, a block that changes is never matched
+ * with words from outside the changed stretch.
+ * 
+ * @see DiffAlgorithm#BLOCKS
+ */
+public final class BlockDiffAlgorithm implements DiffAlgorithm {
+
+	private static final boolean[] blockTags = Words.TagNameTable("p", "div", "li", "ul", "ol", "dl", "dt", "dd", "table",
+			"thead", "tbody", "tfoot", "tr", "td", "th", "h1", "h2", "h3", "h4", "h5", "h6", "blockquote", "pre",
+			"section", "article", "header", "footer", "nav", "aside", "form", "figure", "hr");
+
+	private final DiffAlgorithm inner;
+
+	/**
+	 * @param inner matches both the blocks and the words of changed blocks, not
+	 *        null. Blocks are matched by id alone, with no words to look at, so
+	 *        it cannot be another BlockDiffAlgorithm.
+	 */
+	public BlockDiffAlgorithm(DiffAlgorithm inner) {
+		if (inner == null) {
+			throw new NullPointerException("inner");
+		}
+		if (inner instanceof BlockDiffAlgorithm) {
+			throw new IllegalArgumentException("inner: " + inner);
+		}
+		this.inner = inner;
+	}
+
+	public DiffAlgorithm getInner() {
+		return inner;
+	}
+
+	public void findMatchingBlocks(DiffContext context, int startInOld, int endInOld, int startInNew, int endInNew,
+			Matches matchingBlocks) {
+		Blocks blocks = new Blocks(context);
+		int[] oldBlocks = blocks.split(true, context.oldWords(), startInOld, endInOld);
+		int[] newBlocks = blocks.split(false, context.newWords(), startInNew, endInNew);
+		int oldCount = oldBlocks.length - 1, newCount = newBlocks.length - 1;
+
+		DiffContext nested = context.nested();
+		nested.reset(blocks.ids(0, oldCount), oldCount, blocks.ids(oldCount, newCount), newCount, blocks.count());
+		Matches blockMatches = new Matches();
+		this.inner.findMatchingBlocks(nested, 0, oldCount, 0, newCount, blockMatches);
+		context.reportDepth(nested.maxDepth());
+
+		// Matched blocks match word for word; the words between them are left to
+		// the inner algorithm.
+		int oldBlock = 0, newBlock = 0;
+		for (int i = 0; i <= blockMatches.size(); i++) {
+			int matchInOld = i < blockMatches.size() ? blockMatches.startInOld(i) : oldCount;
+			int matchInNew = i < blockMatches.size() ? blockMatches.startInNew(i) : newCount;
+			if (oldBlock < matchInOld && newBlock < matchInNew) {
+				this.inner.findMatchingBlocks(context, oldBlocks[oldBlock], oldBlocks[matchInOld], newBlocks[newBlock],
+						newBlocks[matchInNew], matchingBlocks);
+			}
+			if (i < blockMatches.size()) {
+				int length = blockMatches.length(i);
+				matchingBlocks.add(oldBlocks[matchInOld], newBlocks[matchInNew], oldBlocks[matchInOld + length]
+						- oldBlocks[matchInOld]);
+				oldBlock = matchInOld + length;
+				newBlock = matchInNew + length;
+			}
+		}
+	}
+
+	/**
+	 * Blocks start at each opening block-level tag and end after each closing
+	 * one.
+	 */
+	private static boolean StartsBlock(Words words, int i) {
+		return words.kind(i) == Words.OPENING_TAG && blockTags[words.tagName(i)];
+	}
+
+	private static boolean EndsBlock(Words words, int i) {
+		return words.kind(i) == Words.CLOSING_TAG && blockTags[words.tagName(i)];
+	}
+
+	/**
+	 * Gives blocks with the same words the same id, across both documents.
+	 */
+	private static final class Blocks {
+
+		private final int[] oldWordIds;
+		private final int[] newWordIds;
+		/** Open addressing table of id + 1 by hash, 0 marks an empty slot. */
+		private int[] slots = new int[32];
+		/** Hash and word range of the first block given each id, in old or new. */
+		private long[] hashes = new long[16];
+		private int[] firstStart = new int[16], firstEnd = new int[16];
+		private boolean[] firstInOld = new boolean[16];
+		private int count;
+		/** Ids of the old blocks followed by those of the new. */
+		private int[] ids = new int[16];
+		private int size;
+
+		Blocks(DiffContext context) {
+			this.oldWordIds = context.getOldWordIds();
+			this.newWordIds = context.getNewWordIds();
+		}
+
+		/**
+		 * Cuts a range of words into blocks and gives each an id.
+		 * @return word index of each block's start, followed by end.
+		 */
+		int[] split(boolean old, Words words, int start, int end) {
+			int[] starts = new int[16];
+			int blocks = 0;
+			int blockStart = start;
+			for (int i = start; i <= end; i++) {
+				if (i > blockStart && (i == end || StartsBlock(words, i) || EndsBlock(words, i - 1))) {
+					if (blocks + 1 == starts.length) {
+						starts = Arrays.copyOf(starts, starts.length * 2);
+					}
+					starts[blocks++] = blockStart;
+					this.add(this.intern(old, blockStart, i));
+					blockStart = i;
+				}
+			}
+			starts = Arrays.copyOf(starts, blocks + 1);
+			starts[blocks] = end;
+			return starts;
+		}
+
+		private int intern(boolean old, int start, int end) {
+			int[] wordIds = old ? this.oldWordIds : this.newWordIds;
+			long hash = end - start;
+			for (int i = start; i < end; i++) {
+				hash = hash * 1000003 + wordIds[i];
+			}
+			int mask = this.slots.length - 1;
+			int slot = Mix(hash) & mask;
+			while (true) {
+				int entry = this.slots[slot];
+				if (entry == 0) {
+					int id = this.addFirst(hash, old, start, end);
+					this.slots[slot] = id + 1;
+					if (this.count * 2 > this.slots.length) {
+						this.rehash();
+					}
+					return id;
+				}
+				if (this.hashes[entry - 1] == hash && this.sameWords(entry - 1, old, start, end)) {
+					return entry - 1;
+				}
+				slot = (slot + 1) & mask;
+			}
+		}
+
+		private void rehash() {
+			int[] table = new int[this.slots.length * 2];
+			int mask = table.length - 1;
+			for (int id = 0; id < this.count; id++) {
+				int slot = Mix(this.hashes[id]) & mask;
+				while (table[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				table[slot] = id + 1;
+			}
+			this.slots = table;
+		}
+
+		private static int Mix(long hash) {
+			int h = (int) (hash ^ (hash >>> 32));
+			h ^= (h >>> 16);
+			h *= 0x85ebca6b;
+			h ^= (h >>> 13);
+			return h;
+		}
+
+		private boolean sameWords(int id, boolean old, int start, int end) {
+			int length = end - start;
+			if (this.firstEnd[id] - this.firstStart[id] != length) {
+				return false;
+			}
+			int[] wordIds = old ? this.oldWordIds : this.newWordIds;
+			int[] firstWordIds = this.firstInOld[id] ? this.oldWordIds : this.newWordIds;
+			for (int i = 0; i < length; i++) {
+				if (wordIds[start + i] != firstWordIds[this.firstStart[id] + i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private int addFirst(long hash, boolean old, int start, int end) {
+			if (this.count == this.firstStart.length) {
+				this.hashes = Arrays.copyOf(this.hashes, this.count * 2);
+				this.firstStart = Arrays.copyOf(this.firstStart, this.count * 2);
+				this.firstEnd = Arrays.copyOf(this.firstEnd, this.count * 2);
+				this.firstInOld = Arrays.copyOf(this.firstInOld, this.count * 2);
+			}
+			this.hashes[this.count] = hash;
+			this.firstStart[this.count] = start;
+			this.firstEnd[this.count] = end;
+			this.firstInOld[this.count] = old;
+			return this.count++;
+		}
+
+		private void add(int id) {
+			if (this.size == this.ids.length) {
+				this.ids = Arrays.copyOf(this.ids, this.size * 2);
+			}
+			this.ids[this.size++] = id;
+		}
+
+		/**
+		 * @return ids of blocks from start on.
+		 */
+		int[] ids(int start, int length) {
+			return Arrays.copyOfRange(this.ids, start, start + length);
+		}
+
+		/**
+		 * @return number of distinct blocks.
+		 */
+		int count() {
+			return this.count;
+		}
+	}
+
+}
@@ -23,605 +23,354 @@
 
 package com.google.code.jhtmldiff;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.regex.Pattern;
+import java.io.IOException;
 
 public class Diff {
 
-	private StringBuilder content;
 	private String oldText, newText;
-	private String[] oldWords, newWords;
-	Map<String, List<Integer>> wordIndices;
-	private String[] specialCaseOpeningTags = new String[] { "<strong[\\>\\s]+", "<b[\\>\\s]+", "<i[\\>\\s]+",
-			"<big[\\>\\s]+", "<small[\\>\\s]+", "<u[\\>\\s]+", "<sub[\\>\\s]+", "<sup[\\>\\s]+", "<strike[\\>\\s]+",
-			"<s[\\>\\s]+" };
-	private String[] specialCaseClosingTags = new String[] { "</strong>", "</b>", "</i>", "</big>", "</small>", "</u>",
-			"</sub>", "</sup>", "</strike>", "</s>" };
+	private PreparedDocument oldDocument, newDocument;
+	private Words oldWords, newWords;
+	private final DiffAlgorithm algorithm;
+	private final DiffContext context;
+	private DiffListener listener;
+	private DiffRenderer renderer = DiffRenderer.HTML;
+	private int matchingBlockCount;
 
 	/**
 	 * @param oldText
 	 * @param newText
 	 */
 	public Diff(String oldText, String newText) {
-		this.oldText = oldText;
-		this.newText = newText;
-
-		this.content = new StringBuilder();
+		this(oldText, newText, DiffAlgorithm.LONGEST_MATCH);
 	}
 
 	/**
-	 * Diffs
-	 * @return diff, not null.
+	 * @param oldText
+	 * @param newText
+	 * @param algorithm finds the words both texts have in common, not null.
 	 */
-	public String build() {
-		this.SplitInputsToWords();
-
-		this.IndexNewWords();
-
-		List<Operation> operations = this.Operations();
-
-		for (Operation item : operations) {
-			this.PerformOperation(item);
-		}
-
-		return this.content.toString();
+	public Diff(String oldText, String newText, DiffAlgorithm algorithm) {
+		this(oldText, newText, algorithm, new DiffContext());
 	}
 
-	private void IndexNewWords() {
-		this.wordIndices = new HashMap<String, List<Integer>>();
-		for (int i = 0; i < this.newWords.length; i++) {
-			String word = this.newWords[i];
-
-			if (this.wordIndices.containsKey(word)) {
-				this.wordIndices.get(word).add(i);
-			}
-			else {
-				this.wordIndices.put(word, new ArrayList<Integer>());
-				this.wordIndices.get(word).add(i);
-			}
-		}
-	}
-
-	private void SplitInputsToWords() {
-		this.oldWords = ConvertHtmlToListOfWords(this.Explode(this.oldText));
-		this.newWords = ConvertHtmlToListOfWords(this.Explode(this.newText));
+	/**
+	 * Diffs against a document prepared earlier, which is not tokenized again.
+	 * @param oldDocument
+	 * @param newText
+	 */
+	public Diff(PreparedDocument oldDocument, String newText) {
+		this(oldDocument, newText, DiffAlgorithm.LONGEST_MATCH, new DiffContext());
 	}
 
-	static boolean contains(Object[] os, Object o) {
-		for (int i = 0; i < os.length; i++) {
-			Object oi = os[i];
-			if (o.equals(oi))
-				return true;
-		}
-		return false;
-	}
-	
-	static String join(String[] sa, String space) {
-		StringBuilder sb = new StringBuilder();
-		boolean skip = true;
-		for (String s : sa) {
-			if (! skip)
-				sb.append(space);
-			sb.append(s);
-		}
-		return sb.toString();
+	/**
+	 * Diffs against a document prepared earlier, which is neither tokenized nor
+	 * indexed again.
+	 * @param oldText
+	 * @param newDocument
+	 */
+	public Diff(String oldText, PreparedDocument newDocument) {
+		this(oldText, newDocument, DiffAlgorithm.LONGEST_MATCH, new DiffContext());
 	}
-	
-	static String join(List<String> sa, String space) {
-		StringBuilder sb = new StringBuilder();
-		boolean skip = true;
-		for (String s : sa) {
-			if (! skip)
-				sb.append(space);
-			sb.append(s);
-		}
-		return sb.toString();
-	}	
-	
-	private String[] ConvertHtmlToListOfWords(String[] characterString) {
-		Mode mode = Mode.character;
-		String current_word = "";
-		List<String> words = new ArrayList<String>();
-		for (String character : characterString) {
-			switch (mode) {
-				case character:
-
-					if (this.IsStartOfTag(character)) {
-						if (! "".equals(current_word)) {
-							words.add(current_word);
-						}
-
-						current_word = "<";
-						mode = Mode.tag;
-					}
-					else if (Pattern.matches("\\s", character)) {
-						if (! "".equals(current_word)) {
-							words.add(current_word);
-						}
-						current_word = character;
-						mode = Mode.whitespace;
-					}
-					else {
-						current_word += character;
-					}
-
-					break;
-				case tag:
-					if (this.IsEndOfTag(character)) {
-						current_word += ">";
-						words.add(current_word);
-						current_word = "";
-
-						if (IsWhiteSpace(character)) {
-							mode = Mode.whitespace;
-						}
-						else {
-							mode = Mode.character;
-						}
-					}
-					else {
-						current_word += character;
-					}
-
-					break;
-				case whitespace:
-
-					if (this.IsStartOfTag(character)) {
-						if (! "".equals(current_word) ) {
-							words.add(current_word);
-						}
-						current_word = "<";
-						mode = Mode.tag;
-					}
-					else if (Pattern.matches("\\s", character)) {
-						current_word += character;
-					}
-					else {
-						if (! "".equals(current_word)) {
-							words.add(current_word);
-						}
-
-						current_word = character;
-						mode = Mode.character;
-					}
-
-					break;
-				default:
-					break;
-			}
-
-		}
-		if ( ! "".equals(current_word) ) {
-			words.add(current_word);
-		}
 
-		return words.toArray(new String[] {});
+	Diff(PreparedDocument oldDocument, String newText, DiffAlgorithm algorithm, DiffContext context) {
+		this(oldDocument.getText(), newText, algorithm, context);
+		this.oldDocument = oldDocument;
 	}
 
-	private boolean IsStartOfTag(String val) {
-		return val == "<";
+	Diff(String oldText, PreparedDocument newDocument, DiffAlgorithm algorithm, DiffContext context) {
+		this(oldText, newDocument.getText(), algorithm, context);
+		this.newDocument = newDocument;
 	}
 
-	private boolean IsEndOfTag(String val) {
-		return val == ">";
+	/**
+	 * @param context holds the words and scratch space, may have been used before.
+	 */
+	Diff(String oldText, String newText, DiffAlgorithm algorithm, DiffContext context) {
+		this.oldText = oldText;
+		this.newText = newText;
+		this.algorithm = algorithm;
+		this.context = context;
 	}
 
-	private boolean IsWhiteSpace(String value) {
-		return Pattern.matches("\\s", value);
+	/**
+	 * Diffs
+	 * @return diff, not null.
+	 */
+	public String build() {
+		StringBuilder content = new StringBuilder();
+		try {
+			this.build(content);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return content.toString();
 	}
 
-	private String[] Explode(String value) {
-		char[] ca = value.toCharArray();
-		String[] s = new String[ca.length];
-		for (int i = 0; i < ca.length; i++) {
-			s[i] = ""+ ca[i];
+	/**
+	 * Diffs, writing the output of each operation to out as soon as it is
+	 * rendered. Nothing is flushed or closed.
+	 * @param out receives the diff, not null.
+	 * @throws IOException if out does.
+	 */
+	public void build(Appendable out) throws IOException {
+		if (this.listener == null) {
+			this.split();
+			this.render(this.operations(), out);
+			return;
 		}
-		return s;
-	}
 
-	private void PerformOperation(Operation operation) {
-		switch (operation.Action) {
-			case equal:
-				this.ProcessEqualOperation(operation);
-				break;
-			case delete:
-				this.ProcessDeleteOperation(operation, "diffdel");
-				break;
-			case insert:
-				this.ProcessInsertOperation(operation, "diffins");
-				break;
-			case none:
-				break;
-			case replace:
-				this.ProcessReplaceOperation(operation);
-				break;
-			default:
-				break;
+		long start = System.nanoTime();
+		this.split();
+		long tokenized = System.nanoTime();
+		EditScript operations = this.operations();
+		long matched = System.nanoTime();
+		CountingAppendable counted = new CountingAppendable(out);
+		this.render(operations, counted);
+		long rendered = System.nanoTime();
+
+		int[] actions = new int[Action.values().length];
+		for (int i = 0; i < operations.size(); i++) {
+			actions[operations.action(i).ordinal()]++;
 		}
+		this.listener.diffCompleted(new DiffStatistics(tokenized - start, matched - tokenized, rendered - matched,
+				this.oldText.length(), this.newText.length(), this.oldWords.size(), this.newWords.size(),
+				this.matchingBlockCount, actions, counted.count, this.context.maxDepth(), this.context.isDegraded()));
 	}
 
-	private void ProcessReplaceOperation(Operation operation) {
-		this.ProcessDeleteOperation(operation, "diffmod");
-		this.ProcessInsertOperation(operation, "diffmod");
+	/**
+	 * Diffs without rendering.
+	 * @return the operations that turn the old text into the new, not null.
+	 */
+	public EditScript editScript() {
+		this.split();
+		return this.operations().detach();
 	}
 
-	private static List<String> where(String[] sa, Func2<String, Integer, Boolean> f) {
-		ArrayList<String> a = new ArrayList<String>();
-		for (int i = 0; i < sa.length; i++) {
-			Boolean b = f.apply(sa[i], i);
-			if (b)
-				a.add(sa[i]);
-		}
-		return a;
+	/**
+	 * Diffs without rendering and scores how much of the texts is unchanged.
+	 * @return 2M / T, where M is the number of words matched and T the number
+	 *         of words in both texts together: 1 if they are the same, 0 if
+	 *         they have nothing in common.
+	 */
+	public double similarity() {
+		return this.similarity(0);
 	}
 
-	private static List<String> where(List<String> sa, Func2<String, Integer, Boolean> f) {
-		ArrayList<String> a = new ArrayList<String>();
-		for (int i = 0; i < sa.size(); i++) {
-			Boolean b = f.apply(sa.get(i), i);
-			if (b)
-				a.add(sa.get(i));
+	/**
+	 * Like {@link #similarity()}, but first checks cheap upper bounds, from the
+	 * word counts and then from the words the texts have in common regardless
+	 * of order. Once a bound is below minimum it is returned as is, without
+	 * matching. If the budget runs out while matching, the words in common
+	 * regardless of order are counted as matched, since the degraded matches
+	 * would understate the similarity.
+	 * @return the similarity if it is at least minimum, otherwise an upper
+	 *         bound of it that is below minimum; an upper bound of it when the
+	 *         budget ran out.
+	 */
+	double similarity(double minimum) {
+		this.split();
+		int oldSize = this.oldWords.size(), newSize = this.newWords.size();
+		int total = oldSize + newSize;
+		if (total == 0) {
+			return 1;
 		}
-		return a;
+		double bound = 2.0 * Math.min(oldSize, newSize) / total;
+		if (bound < minimum) {
+			return bound;
+		}
+		bound = 2.0 * this.CommonWordCount() / total;
+		if (bound < minimum) {
+			return bound;
+		}
+		Matches matches = this.matches();
+		int matched = 0;
+		for (int i = 0; i < matches.size(); i++) {
+			matched += matches.length(i);
+		}
+		if (this.context.isDegraded()) {
+			return bound;
+		}
+		return 2.0 * matched / total;
 	}
 
-	private void ProcessInsertOperation(final Operation operation, String cssClass) {
-
-		List<String> r = where(this.newWords, new Func2<String, Integer, Boolean>() {
-
-			public Boolean apply(String f, Integer pos) {
-				return pos >= operation.StartInNew && pos < operation.EndInNew;
+	/**
+	 * @return number of words both texts have, counting each as often as the
+	 *         text with fewer of it has it.
+	 */
+	private int CommonWordCount() {
+		int[] oldWordIds = this.context.getOldWordIds(), newWordIds = this.context.getNewWordIds();
+		int[] counts = this.context.getBuffer(0, this.context.getSymbolCount());
+		for (int i = 0; i < this.oldWords.size(); i++) {
+			counts[oldWordIds[i]]++;
+		}
+		int common = 0;
+		for (int i = 0; i < this.newWords.size(); i++) {
+			if (counts[newWordIds[i]] > 0) {
+				counts[newWordIds[i]]--;
+				common++;
 			}
-
-		});
-		this.InsertTag("ins", cssClass, r);
+		}
+		return common;
 	}
 
-	private void ProcessDeleteOperation(final Operation operation, String cssClass) {
-		List<String> r = where(this.oldWords, new Func2<String, Integer, Boolean>() {
-
-			public Boolean apply(String f, Integer pos) {
-				return pos >= operation.StartInOld && pos < operation.EndInOld;
-			}
-
-		});
-		this.InsertTag("del", cssClass, r);
+	/**
+	 * @param renderer writes the output of {@link #build(Appendable)}, not null.
+	 */
+	void setRenderer(DiffRenderer renderer) {
+		this.renderer = renderer;
 	}
 
-	private void ProcessEqualOperation(final Operation operation) {
-		List<String> r = where(this.newWords, new Func2<String, Integer, Boolean>() {
-
-			public Boolean apply(String f, Integer pos) {
-				return pos >= operation.StartInNew && pos < operation.EndInNew;
-			}
-
-		});
-		this.content.append(join(r, ""));
+	/**
+	 * @param listener told about the diff once it is built, null for none.
+	 */
+	void setListener(DiffListener listener) {
+		this.listener = listener;
 	}
 
-	// / <summary>
-	// / This method encloses words within a specified tag (ins or del), and
-	// adds this into "content",
-	// / with a twist: if there are words contain tags, it actually creates
-	// multiple ins or del,
-	// / so that they don't include any ins or del. This handles cases like
-	// / old: '<p>a</p>'
-	// / new: '<p>ab</p><p>c</b>'
-	// / diff result: '<p>a<ins>b</ins></p><p><ins>c</ins></p>'
-	// / this still doesn't guarantee valid HTML (hint: think about diffing a
-	// text containing ins or
-	// / del tags), but handles correctly more cases than the earlier version.
-	// /
-	// / P.S.: Spare a thought for people who write HTML browsers. They live in
-	// this ... every day.
-	// / </summary>
-	// / <param name="tag"></param>
-	// / <param name="cssClass"></param>
-	// / <param name="words"></param>
-	private void InsertTag(String tag, String cssClass, List<String> words) {
-		while (true) {
-			if (words.size() == 0) {
-				break;
-			}
-			final Diff self = this;
-			String[] nonTags = ExtractConsecutiveWords(words, new Func<String, Boolean>() {
-
-				public Boolean apply(String x) {
-					return !self.IsTag(x);
-				}
-			});
-
-			String specialCaseTagInjection = "";
-			boolean specialCaseTagInjectionIsBefore = false;
-
-			if (nonTags.length != 0) {
-				String text = this.WrapText(join(nonTags, ""), tag, cssClass);
-
-				this.content.append(text);
-			}
-			else {
-				// Check if strong tag
-				boolean specialMatch = false;
-				for (String s : this.specialCaseOpeningTags) {
-					if (Pattern.matches(s, words.get(0))) {
-						specialMatch = true;
-						break;
-					}
-				}
-				if (specialMatch) {
-					specialCaseTagInjection = "<ins class='mod'>";
-					if (tag == "del") {
-						words.remove(0);
-					}
-				}
-				else if (contains(this.specialCaseClosingTags, words.get(0))) {
-					specialCaseTagInjection = "</ins>";
-					specialCaseTagInjectionIsBefore = true;
-					if (tag == "del") {
-						words.remove(0);
-					}
-				}
-
-			}
-
-			if (words.size() == 0 && specialCaseTagInjection.length() == 0) {
-				break;
-			}
-
-			if (specialCaseTagInjectionIsBefore) {
-				String[] e = this.ExtractConsecutiveWords(words, new Func<String, Boolean>() {
-
-					public Boolean apply(String x) {
-						return self.IsTag(x);
-					}
-
-				});
-				this.content.append(specialCaseTagInjection + join(e, ""));
-			}
-			else {
-				String[] e = this.ExtractConsecutiveWords(words, new Func<String, Boolean>() {
-
-					public Boolean apply(String x) {
-						return self.IsTag(x);
-					}
-
-				});
-				this.content.append(join(e, "") + specialCaseTagInjection);
-			}
-		}
+	/**
+	 * First phase of {@link #build(Appendable)}: tokenizes and interns both
+	 * texts.
+	 */
+	void split() {
+		this.context.startBudget();
+		this.SplitInputsToWords();
 	}
 
-	private String WrapText(String text, String tagName, String cssClass) {
-		return "<"+tagName+ " class=\"" + cssClass + "\">" +text +"</"+tagName +">";
+	/**
+	 * Second phase: finds the matching blocks and the operations they imply.
+	 * Needs {@link #split()} first.
+	 */
+	EditScript operations() {
+		return this.Operations();
 	}
 
-	private String[] ExtractConsecutiveWords(List<String> words, Func<String, Boolean> condition) {
-		Integer indexOfFirstTag = null;
+	/**
+	 * Second phase without the operations: the matching blocks alone, which
+	 * belong to the context. Needs {@link #split()} first.
+	 */
+	Matches matches() {
+		return this.MatchingBlocks();
+	}
 
-		for (int i = 0; i < words.size(); i++) {
-			String word = words.get(i);
+	/**
+	 * Last phase: writes the output of each operation to out with the
+	 * renderer.
+	 */
+	void render(EditScript operations, Appendable out) throws IOException {
+		this.renderer.render(operations, out);
+	}
 
-			if (!condition.apply(word)) {
-				indexOfFirstTag = i;
-				break;
-			}
+	private void SplitInputsToWords() {
+		if (this.oldDocument != null) {
+			this.context.tokenize(this.oldDocument, this.newText);
 		}
-
-		if (indexOfFirstTag != null) {
-			final Integer it = indexOfFirstTag;
-			List<String> items = where(words, new Func2<String, Integer, Boolean>() {
-
-				public Boolean apply(String f, Integer pos) {
-					return pos >= 0 && pos < it;
-				}
-			});
-
-			if (indexOfFirstTag > 0) {
-				removeRange(words, 0, indexOfFirstTag);
-			}
-			return items.toArray(new String[] {});
+		else if (this.newDocument != null) {
+			this.context.tokenize(this.oldText, this.newDocument);
 		}
 		else {
-			final Integer it = words.size();
-			List<String> items = where(words, new Func2<String, Integer, Boolean>() {
-
-				public Boolean apply(String f, Integer pos) {
-					return pos >= 0 && pos <= it;
-				}
-			});
-			removeRange(words, 0, words.size());
-			return items.toArray(new String[] {});
+			this.context.tokenize(this.oldText, this.newText);
 		}
+		this.oldWords = this.context.oldWords();
+		this.newWords = this.context.newWords();
 	}
 
-	private static void removeRange(List<?> list, int i, int j) {
-		list.subList(i, i + j).clear();
+	private EditScript Operations() {
+		Matches matches = this.MatchingBlocks();
+		this.matchingBlockCount = matches.size();
+		EditScript script = EditScript.fromMatches(matches, this.oldWords.size(), this.newWords.size(),
+				this.context.operations());
+		script.setWords(this.oldWords, this.newWords);
+		script.setDegraded(this.context.isDegraded());
+		return script;
 	}
 
-	private boolean IsTag(String item) {
-		boolean isTag = IsOpeningTag(item) || IsClosingTag(item);
-		return isTag;
-	}
-
-	private boolean IsOpeningTag(String item) {
-		return Pattern.matches("^\\s*<[^>]+>\\s*$", item);
-	}
-
-	private boolean IsClosingTag(String item) {
-		return Pattern.matches("^\\s*</[^>]+>\\s*$", item);
-	}
-
-	private List<Operation> Operations() {
-		int positionInOld = 0, positionInNew = 0;
-		List<Operation> operations = new ArrayList<Operation>();
-
-		List<Diff.Match> matches = this.MatchingBlocks();
-
-		matches.add(new Match(this.oldWords.length, this.newWords.length, 0));
-
-		for (int i = 0; i < matches.size(); i++) {
-			Diff.Match match = matches.get(i);
-
-			boolean matchStartsAtCurrentPositionInOld = (positionInOld == match.StartInOld);
-			boolean matchStartsAtCurrentPositionInNew = (positionInNew == match.StartInNew);
-
-			Action action = Action.none;
-
-			if (matchStartsAtCurrentPositionInOld == false && matchStartsAtCurrentPositionInNew == false) {
-				action = Action.replace;
-			}
-			else if (matchStartsAtCurrentPositionInOld == true && matchStartsAtCurrentPositionInNew == false) {
-				action = Action.insert;
-			}
-			else if (matchStartsAtCurrentPositionInOld == false && matchStartsAtCurrentPositionInNew == true) {
-				action = Action.delete;
-			}
-			else // This occurs if the first few words are the same in both
-					// versions
-			{
-				action = Action.none;
-			}
-
-			if (action != Action.none) {
-				operations.add(new Operation(action, positionInOld, match.StartInOld, positionInNew, match.StartInNew));
-			}
-
-			if (match.Size != 0) {
-				operations.add(new Operation(Action.equal, match.StartInOld, match.getEndInOld(), match.StartInNew,
-						match.getEndInNew()));
-
-			}
-
-			positionInOld = match.getEndInOld();
-			positionInNew = match.getEndInNew();
-		}
-
-		return operations;
-
-	}
-
-	private List<Match> MatchingBlocks() {
-		List<Match> matchingBlocks = new ArrayList<Match>();
-		this.FindMatchingBlocks(0, this.oldWords.length, 0, this.newWords.length, matchingBlocks);
+	private Matches MatchingBlocks() {
+		Matches matchingBlocks = this.context.matchingBlocks();
+		FindMatchingBlocks(this.algorithm, this.context, this.newWords, 0, this.oldWords.size(), 0,
+				this.newWords.size(), matchingBlocks);
 		return matchingBlocks;
 	}
 
-	private void FindMatchingBlocks(int startInOld, int endInOld, int startInNew, int endInNew,
-			List<Match> matchingBlocks) {
-		Match match = this.FindMatch(startInOld, endInOld, startInNew, endInNew);
-
-		if (match != null) {
-			if (startInOld < match.StartInOld && startInNew < match.StartInNew) {
-				this.FindMatchingBlocks(startInOld, match.StartInOld, startInNew, match.StartInNew, matchingBlocks);
-			}
-
-			matchingBlocks.add(match);
-
-			if (match.getEndInOld() < endInOld && match.getEndInNew() < endInNew) {
-				this.FindMatchingBlocks(match.getEndInOld(), endInOld, match.getEndInNew(), endInNew, matchingBlocks);
-			}
-
+	/**
+	 * Matches the equal leading and trailing words of the ranges up front, so
+	 * the algorithm only searches the changed middle and costs about as much
+	 * as the edit. The whitespace next to the change is left to the search,
+	 * which is what attaches it to the edit. A longest match crossing the
+	 * trimmed ends is not looked for, so repeated words at an end can be paired
+	 * differently than a search over the whole ranges would.
+	 */
+	static void FindMatchingBlocks(DiffAlgorithm algorithm, DiffContext context, Words newWords, int startInOld,
+			int endInOld, int startInNew, int endInNew, Matches matchingBlocks) {
+		int[] oldWordIds = context.getOldWordIds();
+		int[] newWordIds = context.getNewWordIds();
+
+		int prefix = 0;
+		int maxPrefix = Math.min(endInOld - startInOld, endInNew - startInNew);
+		while (prefix < maxPrefix && oldWordIds[startInOld + prefix] == newWordIds[startInNew + prefix]) {
+			prefix++;
 		}
-	}
-
-	private Match FindMatch(int startInOld, int endInOld, int startInNew, int endInNew) {
-		int bestMatchInOld = startInOld;
-		int bestMatchInNew = startInNew;
-		int bestMatchSize = 0;
-
-		HashMap<Integer, Integer> matchLengthAt = new HashMap<Integer, Integer>();
-
-		for (int indexInOld = startInOld; indexInOld < endInOld; indexInOld++) {
-			HashMap<Integer, Integer> newMatchLengthAt = new HashMap<Integer, Integer>();
-
-			String index = this.oldWords[indexInOld];
-
-			if (!this.wordIndices.containsKey(index)) {
-				matchLengthAt = newMatchLengthAt;
-				continue;
+		int suffix = 0;
+		int maxSuffix = maxPrefix - prefix;
+		while (suffix < maxSuffix && oldWordIds[endInOld - suffix - 1] == newWordIds[endInNew - suffix - 1]) {
+			suffix++;
+		}
+		if (startInOld + prefix != endInOld || startInNew + prefix != endInNew) {
+			while (prefix > 0 && IsWhiteSpaceWord(newWords, startInNew + prefix - 1)) {
+				prefix--;
 			}
-
-			for (int indexInNew : this.wordIndices.get(index)) {
-				if (indexInNew < startInNew) {
-					continue;
-				}
-
-				if (indexInNew >= endInNew) {
-					break;
-				}
-
-				int newMatchLength = (matchLengthAt.containsKey(indexInNew - 1) ? matchLengthAt.get(indexInNew - 1) : 0) + 1;
-				newMatchLengthAt.put(indexInNew, newMatchLength);
-
-				if (newMatchLength > bestMatchSize) {
-					bestMatchInOld = indexInOld - newMatchLength + 1;
-					bestMatchInNew = indexInNew - newMatchLength + 1;
-					bestMatchSize = newMatchLength;
-				}
+			while (suffix > 0 && IsWhiteSpaceWord(newWords, endInNew - suffix)) {
+				suffix--;
 			}
-
-			matchLengthAt = newMatchLengthAt;
 		}
 
-		return bestMatchSize != 0 ? new Match(bestMatchInOld, bestMatchInNew, bestMatchSize) : null;
-	}
-
-	interface Func<F, T> {
-
-		T apply(F input);
+		if (prefix > 0) {
+			matchingBlocks.add(startInOld, startInNew, prefix);
+		}
+		if (startInOld + prefix < endInOld - suffix && startInNew + prefix < endInNew - suffix) {
+			algorithm.findMatchingBlocks(context, startInOld + prefix, endInOld - suffix, startInNew + prefix,
+					endInNew - suffix, matchingBlocks);
+		}
+		if (suffix > 0) {
+			matchingBlocks.add(endInOld - suffix, endInNew - suffix, suffix);
+		}
 	}
 
-	interface Func2<F, G, T> {
-
-		T apply(F f, G g);
+	private static boolean IsWhiteSpaceWord(Words words, int i) {
+		return Words.IsWhiteSpace(words.getText().charAt(words.start(i)));
 	}
 
-	class Match {
+	/**
+	 * Counts what passes through to out.
+	 */
+	private static final class CountingAppendable implements Appendable {
 
-		public int StartInOld;
-		public int StartInNew;
-		public int Size;
+		private final Appendable out;
+		long count;
 
-		public Match(int startInOld, int startInNew, int size) {
-			this.StartInOld = startInOld;
-			this.StartInNew = startInNew;
-			this.Size = size;
+		CountingAppendable(Appendable out) {
+			this.out = out;
 		}
 
-		public int getEndInOld() {
-			return this.StartInOld + this.Size;
+		public Appendable append(CharSequence csq) throws IOException {
+			this.out.append(csq);
+			this.count += csq == null ? 4 : csq.length();
+			return this;
 		}
 
-		public int getEndInNew() {
-			return this.StartInNew + this.Size;
+		public Appendable append(CharSequence csq, int start, int end) throws IOException {
+			this.out.append(csq, start, end);
+			this.count += end - start;
+			return this;
 		}
-	}
-
-	class Operation {
-
-		public Action Action;
-		public int StartInOld;
-		public int EndInOld;
-		public int StartInNew;
-		public int EndInNew;
 
-		public Operation(Action action, int startInOld, int endInOld, int startInNew, int endInNew) {
-			this.Action = action;
-			this.StartInOld = startInOld;
-			this.EndInOld = endInOld;
-			this.StartInNew = startInNew;
-			this.EndInNew = endInNew;
+		public Appendable append(char c) throws IOException {
+			this.out.append(c);
+			this.count++;
+			return this;
 		}
 	}
 
-	static enum Mode {
-		character, tag, whitespace,
-	}
-
-	static enum Action {
+	public static enum Action {
 		equal, delete, insert, none, replace
 	}
 
@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+/**
+ * Strategy for finding the words two documents have in common.
+ * <p>
+ * Every algorithm reports its result as matching blocks, from which
+ * {@link Diff} derives the same operations whichever algorithm is used.
+ * Implementations must be stateless; anything they need per diff comes from
+ * the {@link DiffContext}.
+ */
+public interface DiffAlgorithm {
+
+	/**
+	 * Recursively picks the longest run of equal words, then searches either
+	 * side of it. Tends to give the most readable diffs, but its cost grows
+	 * with the size of the documents.
+	 */
+	DiffAlgorithm LONGEST_MATCH = new LongestMatchAlgorithm();
+
+	/**
+	 * Myers' O(ND) algorithm in linear space. Its cost grows with the number of
+	 * differences, which suits large, mostly similar documents.
+	 */
+	DiffAlgorithm MYERS = new MyersAlgorithm();
+
+	/**
+	 * Matches whole blocks such as paragraphs, list items and table rows first,
+	 * then diffs only the changed blocks with {@link #LONGEST_MATCH}. Its cost
+	 * grows with the size of the changed blocks rather than the page.
+	 * @see BlockDiffAlgorithm
+	 */
+	DiffAlgorithm BLOCKS = new BlockDiffAlgorithm(LONGEST_MATCH);
+
+	/**
+	 * Adds the matching blocks found between the given ranges of old and new
+	 * words to matchingBlocks, in ascending order.
+	 */
+	void findMatchingBlocks(DiffContext context, int startInOld, int endInOld, int startInNew, int endInNew,
+			Matches matchingBlocks);
+
+}
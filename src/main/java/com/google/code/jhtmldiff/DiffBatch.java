@@ -0,0 +1,218 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Diffs many pairs of documents on an executor, normally a
+ * {@link ForkJoinPool} so idle workers steal from busy ones.
+ * <p>
+ * Pairs are taken from the iterator only as fast as they are diffed, with at
+ * most a fixed number in flight, so a large corpus is never loaded at once.
+ * 
+ * <pre>
+ * ForkJoinPool pool = new ForkJoinPool();
+ * List&lt;String&gt; diffs = new DiffBatch(DiffEngine.DEFAULT, pool).diff(pairs);
+ * </pre>
+ */
+public final class DiffBatch {
+
+	/**
+	 * Two documents to compare. Texts are fetched on the worker thread that
+	 * diffs them, so they may be loaded lazily.
+	 */
+	public interface Pair {
+
+		String getOldText() throws IOException;
+
+		String getNewText() throws IOException;
+	}
+
+	/**
+	 * Receives each result as it is done. Called from worker threads, in any
+	 * order, so it must be thread-safe.
+	 */
+	public interface Callback<P> {
+
+		/**
+		 * @param index position of the pair in the input, from 0.
+		 */
+		void completed(int index, P pair, String diff) throws IOException;
+
+		/**
+		 * @param e thrown while loading, diffing, or by
+		 *        {@link #completed(int, Object, String)}, including errors.
+		 */
+		void failed(int index, P pair, Throwable e);
+	}
+
+	private final DiffEngine engine;
+	private final Executor executor;
+	private final int maxPending;
+
+	/**
+	 * Keeps up to four pairs per worker in flight.
+	 */
+	public DiffBatch(DiffEngine engine, ForkJoinPool pool) {
+		this(engine, pool, pool.getParallelism() * 4);
+	}
+
+	/**
+	 * @param maxPending most pairs submitted but not yet done, at least 1.
+	 */
+	public DiffBatch(DiffEngine engine, Executor executor, int maxPending) {
+		if (engine == null) {
+			throw new NullPointerException("engine");
+		}
+		if (executor == null) {
+			throw new NullPointerException("executor");
+		}
+		if (maxPending < 1) {
+			throw new IllegalArgumentException("maxPending: " + maxPending);
+		}
+		this.engine = engine;
+		this.executor = executor;
+		this.maxPending = maxPending;
+	}
+
+	/**
+	 * Pair of texts already in memory.
+	 */
+	public static Pair pair(final String oldText, final String newText) {
+		return new Pair() {
+
+			public String getOldText() {
+				return oldText;
+			}
+
+			public String getNewText() {
+				return newText;
+			}
+		};
+	}
+
+	/**
+	 * Diffs every pair and returns the results in input order.
+	 * @throws IOException the first failure to load a pair, after all others are
+	 *         done; other failures, errors included, are thrown the same way.
+	 */
+	public List<String> diff(List<? extends Pair> pairs) throws IOException, InterruptedException {
+		final String[] diffs = new String[pairs.size()];
+		final Throwable[] failure = new Throwable[1];
+		diff(pairs.iterator(), new Callback<Pair>() {
+
+			public void completed(int index, Pair pair, String diff) {
+				diffs[index] = diff;
+			}
+
+			public void failed(int index, Pair pair, Throwable e) {
+				synchronized (failure) {
+					if (failure[0] == null) {
+						failure[0] = e;
+					}
+				}
+			}
+		});
+		synchronized (failure) {
+			if (failure[0] instanceof IOException) {
+				throw (IOException) failure[0];
+			}
+			if (failure[0] instanceof RuntimeException) {
+				throw (RuntimeException) failure[0];
+			}
+			if (failure[0] instanceof Error) {
+				throw (Error) failure[0];
+			}
+		}
+		return Arrays.asList(diffs);
+	}
+
+	/**
+	 * Diffs every pair, handing each result to callback as soon as it is done.
+	 * Returns once all pairs have been passed to callback. If the iterator
+	 * throws, or submitting a pair does, the pairs already submitted are
+	 * finished before the exception is passed on.
+	 */
+	public <P extends Pair> void diff(Iterator<? extends P> pairs, Callback<? super P> callback)
+			throws InterruptedException {
+		Semaphore pending = new Semaphore(maxPending);
+		int index = 0;
+		try {
+			while (pairs.hasNext()) {
+				P pair = pairs.next();
+				pending.acquire();
+				try {
+					executor.execute(new Task<P>(index++, pair, callback, pending));
+				} catch (RejectedExecutionException e) {
+					pending.release();
+					throw e;
+				}
+			}
+		} catch (Throwable e) {
+			// Callbacks must not run after this returns.
+			pending.acquireUninterruptibly(maxPending);
+			throw e;
+		}
+		// Every permit is back once the last task is done.
+		pending.acquire(maxPending);
+	}
+
+	private final class Task<P extends Pair> implements Runnable {
+
+		private final int index;
+		private final P pair;
+		private final Callback<? super P> callback;
+		private final Semaphore pending;
+
+		Task(int index, P pair, Callback<? super P> callback, Semaphore pending) {
+			this.index = index;
+			this.pair = pair;
+			this.callback = callback;
+			this.pending = pending;
+		}
+
+		public void run() {
+			try {
+				try {
+					String diff = engine.diff(pair.getOldText(), pair.getNewText());
+					callback.completed(index, pair, diff);
+				} catch (Throwable e) {
+					callback.failed(index, pair, e);
+				}
+			}
+			finally {
+				pending.release();
+			}
+		}
+	}
+
+}
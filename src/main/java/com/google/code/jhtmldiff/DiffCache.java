@@ -0,0 +1,294 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers recent diffs made by an engine, so asking for the same comparison
+ * again returns the earlier result instead of diffing again.
+ * <p>
+ * Results are keyed by SHA-256 hashes of both texts and the engine's
+ * algorithm and renderer, and evicted least recently used first once their
+ * total size passes a limit. Diffs that ran out of the engine's time or work
+ * limit are returned but not kept, so a later request can diff them in full.
+ * Concurrent requests for the same diff share a single computation. A cache
+ * is safe to use from any number of threads.
+ * 
+ * <pre>
+ * DiffCache cache = new DiffCache(DiffEngine.DEFAULT, 64 * 1024 * 1024);
+ * String html = cache.diff(oldText, newText);
+ * </pre>
+ */
+public final class DiffCache {
+
+	/** Rough size of an entry apart from its result: key, hashes and map entry. */
+	static final int ENTRY_OVERHEAD = 200;
+
+	private final DiffEngine engine;
+	private final long maxBytes;
+	private final LinkedHashMap<Key, String> results = new LinkedHashMap<Key, String>(16, 0.75f, true);
+	private long bytes;
+	private final ConcurrentHashMap<Key, FutureTask<String>> inFlight = new ConcurrentHashMap<Key, FutureTask<String>>();
+	private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), evictions = new AtomicLong();
+	private static final ThreadLocal<Digest> digests = new ThreadLocal<Digest>() {
+
+		protected Digest initialValue() {
+			return new Digest();
+		}
+	};
+
+	/**
+	 * @param engine makes the diffs, not null.
+	 * @param maxBytes most memory the results may take, roughly.
+	 */
+	public DiffCache(DiffEngine engine, long maxBytes) {
+		if (engine == null) {
+			throw new NullPointerException("engine");
+		}
+		this.engine = engine;
+		this.maxBytes = maxBytes;
+	}
+
+	public DiffEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * @return diff, from the cache if it was made before, not null.
+	 */
+	public String diff(final String oldText, final String newText) {
+		final Key key = new Key(digests.get().hash(oldText), digests.get().hash(newText), engine.getAlgorithm(),
+				engine.getRenderer());
+		String result = get(key);
+		if (result != null) {
+			hits.incrementAndGet();
+			return result;
+		}
+
+		FutureTask<String> task = new FutureTask<String>(new Callable<String>() {
+
+			public String call() {
+				// Another thread may have finished this diff since the lookup above.
+				String result = get(key);
+				if (result != null) {
+					hits.incrementAndGet();
+					return result;
+				}
+				misses.incrementAndGet();
+				StringBuilder out = new StringBuilder();
+				boolean degraded;
+				try {
+					degraded = engine.build(oldText, newText, out);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+				result = out.toString();
+				if (!degraded) {
+					put(key, result);
+				}
+				return result;
+			}
+		});
+		FutureTask<String> running = inFlight.putIfAbsent(key, task);
+		if (running == null) {
+			try {
+				task.run();
+			}
+			finally {
+				inFlight.remove(key, task);
+			}
+			return await(task);
+		}
+		hits.incrementAndGet();
+		return await(running);
+	}
+
+	/**
+	 * @return number of diffs returned without being computed, including ones
+	 *         that waited on the same diff being computed by another thread.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return number of diffs computed.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public synchronized int size() {
+		return results.size();
+	}
+
+	/**
+	 * @return memory the cached results take, roughly.
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized void clear() {
+		results.clear();
+		bytes = 0;
+	}
+
+	private synchronized String get(Key key) {
+		return results.get(key);
+	}
+
+	private synchronized void put(Key key, String result) {
+		long weight = Weight(result);
+		if (weight > maxBytes) {
+			return;
+		}
+		String previous = results.put(key, result);
+		if (previous != null) {
+			bytes -= Weight(previous);
+		}
+		bytes += weight;
+		Iterator<Map.Entry<Key, String>> eldest = results.entrySet().iterator();
+		while (bytes > maxBytes) {
+			bytes -= Weight(eldest.next().getValue());
+			eldest.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	private static long Weight(String result) {
+		return 2L * result.length() + ENTRY_OVERHEAD;
+	}
+
+	/**
+	 * Waits for the task without giving up on interrupts, which are passed on
+	 * once it is done.
+	 */
+	private static String await(FutureTask<String> task) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return task.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new RuntimeException(cause);
+				}
+			}
+		}
+		finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static final class Key {
+
+		private final byte[] oldHash, newHash;
+		private final DiffAlgorithm algorithm;
+		private final DiffRenderer renderer;
+		private final int hashCode;
+
+		Key(byte[] oldHash, byte[] newHash, DiffAlgorithm algorithm, DiffRenderer renderer) {
+			this.oldHash = oldHash;
+			this.newHash = newHash;
+			this.algorithm = algorithm;
+			this.renderer = renderer;
+			this.hashCode = ((Arrays.hashCode(oldHash) * 31 + Arrays.hashCode(newHash)) * 31 + algorithm.hashCode())
+					* 31 + renderer.hashCode();
+		}
+
+		public int hashCode() {
+			return hashCode;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return algorithm == other.algorithm && renderer == other.renderer && Arrays.equals(oldHash, other.oldHash)
+					&& Arrays.equals(newHash, other.newHash);
+		}
+	}
+
+	/**
+	 * SHA-256 of a string's UTF-16 code units, fed through a reused buffer.
+	 */
+	private static final class Digest {
+
+		private final MessageDigest sha256;
+		private final byte[] buffer = new byte[8192];
+
+		Digest() {
+			try {
+				this.sha256 = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				// Every Java platform is required to support SHA-256.
+				throw new IllegalStateException(e);
+			}
+		}
+
+		byte[] hash(String text) {
+			int length = text.length();
+			for (int start = 0; start < length; start += buffer.length / 2) {
+				int end = Math.min(length, start + buffer.length / 2);
+				int j = 0;
+				for (int i = start; i < end; i++) {
+					char c = text.charAt(i);
+					buffer[j++] = (byte) (c >>> 8);
+					buffer[j++] = (byte) c;
+				}
+				sha256.update(buffer, 0, j);
+			}
+			return sha256.digest();
+		}
+	}
+
+}
@@ -0,0 +1,449 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The word ids of the two documents being compared, plus scratch space for
+ * the {@link DiffAlgorithm}.
+ * <p>
+ * A context is used by one thread at a time. Its arrays are kept between diffs
+ * so that a {@link DiffEngine} can reuse them, up to a size limit.
+ */
+public final class DiffContext {
+
+	/**
+	 * Arrays holding more entries than this between them are dropped rather
+	 * than kept for the next diff.
+	 */
+	static final int MAX_RETAINED_LENGTH = 1 << 20;
+
+	/** Texts this long, old and new together, are tokenized concurrently given a pool. */
+	static final int PARALLEL_TOKENIZE_LENGTH = 1 << 16;
+
+	private static final int[] EMPTY = new int[0];
+
+	private Words oldWords, newWords;
+	private int[] oldWordIds = EMPTY, newWordIds = EMPTY;
+	private int oldSize, newSize;
+	private int symbolCount;
+	private WordIndex newWordIndex;
+	private boolean indexed;
+	/** New words to index when the index is built here. */
+	private int indexStart, indexEnd;
+	private boolean sparseIndex;
+	private int maxDepth;
+	// Arrays this context owns and reuses; the ones above may belong to a
+	// PreparedDocument instead.
+	private Words ownOldWords, ownNewWords;
+	private int[] ownOldWordIds = EMPTY, ownNewWordIds = EMPTY;
+	private WordIndex ownNewWordIndex;
+	private SymbolTable symbols = new SymbolTable();
+	private Matches matchingBlocks = new Matches();
+	private EditScript operations = new EditScript();
+	private int[][] buffers = new int[4][];
+	private final ForkJoinPool pool;
+	private final Budget budget;
+	private DiffContext nested;
+
+	DiffContext() {
+		this(null);
+	}
+
+	/**
+	 * @param pool runs parts of a diff in parallel, null for none.
+	 */
+	DiffContext(ForkJoinPool pool) {
+		this(pool, new Budget());
+	}
+
+	private DiffContext(ForkJoinPool pool, Budget budget) {
+		this.pool = pool;
+		this.budget = budget;
+	}
+
+	/**
+	 * Tokenizes and interns both texts. Given a pool, long texts are tokenized
+	 * at the same time; interning stays sequential, so ids are the same either
+	 * way.
+	 */
+	void tokenize(String oldText, final String newText) {
+		if (this.pool != null && oldText.length() + newText.length() >= PARALLEL_TOKENIZE_LENGTH) {
+			final Words reuse = this.ownNewWords;
+			ForkJoinTask<Words> task = ForkJoinTask.adapt(new Callable<Words>() {
+
+				public Words call() {
+					return Words.tokenize(newText, reuse);
+				}
+			});
+			if (ForkJoinTask.getPool() == this.pool) {
+				task.fork();
+			}
+			else {
+				this.pool.execute(task);
+			}
+			this.ownOldWords = Words.tokenize(oldText, this.ownOldWords);
+			this.ownNewWords = task.join();
+		}
+		else {
+			this.ownOldWords = Words.tokenize(oldText, this.ownOldWords);
+			this.ownNewWords = Words.tokenize(newText, this.ownNewWords);
+		}
+
+		this.symbols.clear();
+		this.ownOldWordIds = this.symbols.intern(this.ownOldWords, this.ownOldWordIds);
+		this.ownNewWordIds = this.symbols.intern(this.ownNewWords, this.ownNewWordIds);
+		this.reset(this.ownOldWords, this.ownOldWordIds, this.ownNewWords, this.ownNewWordIds, this.symbols.size(), null);
+	}
+
+	/**
+	 * Tokenizes the new text only, giving its words ids that agree with the
+	 * old document's.
+	 */
+	void tokenize(PreparedDocument oldDocument, String newText) {
+		this.ownNewWords = Words.tokenize(newText, this.ownNewWords);
+		this.symbols.clear();
+		this.ownNewWordIds = oldDocument.intern(this.ownNewWords, this.symbols, this.ownNewWordIds);
+		this.reset(oldDocument.words(), oldDocument.wordIds(), this.ownNewWords, this.ownNewWordIds,
+				oldDocument.symbolCount() + this.symbols.size(), null);
+	}
+
+	/**
+	 * Tokenizes the old text only, and uses the new document's index as is.
+	 * Old words it does not contain get ids past its symbols, which the index
+	 * has no positions for.
+	 */
+	void tokenize(String oldText, PreparedDocument newDocument) {
+		this.ownOldWords = Words.tokenize(oldText, this.ownOldWords);
+		this.symbols.clear();
+		this.ownOldWordIds = newDocument.intern(this.ownOldWords, this.symbols, this.ownOldWordIds);
+		this.reset(this.ownOldWords, this.ownOldWordIds, newDocument.words(), newDocument.wordIds(),
+				newDocument.symbolCount() + this.symbols.size(), newDocument.wordIndex());
+	}
+
+	/**
+	 * Compares a prepared old document against new words whose ids were
+	 * already made to agree with it. Only the new words from startInNew up to
+	 * endInNew are indexed, sparsely, so a search must stay within them and the
+	 * index costs as much as they do.
+	 */
+	void reset(PreparedDocument oldDocument, Words newWords, int[] newWordIds, int symbolCount, int startInNew,
+			int endInNew) {
+		this.reset(oldDocument.words(), oldDocument.wordIds(), newWords, newWordIds, symbolCount, null);
+		this.indexStart = startInNew;
+		this.indexEnd = endInNew;
+		this.sparseIndex = true;
+	}
+
+	/**
+	 * Hands over the table that the last tokenize against a prepared document
+	 * interned the other text's unknown words into, so their ids stay valid
+	 * after a release; the context starts a new one.
+	 */
+	SymbolTable takeSymbols() {
+		SymbolTable taken = this.symbols;
+		this.symbols = new SymbolTable();
+		return taken;
+	}
+
+	/**
+	 * @param newWordIndex index of the new words, null to build it when needed.
+	 */
+	private void reset(Words oldWords, int[] oldWordIds, Words newWords, int[] newWordIds, int symbolCount,
+			WordIndex newWordIndex) {
+		this.oldWords = oldWords;
+		this.newWords = newWords;
+		this.reset(oldWordIds, oldWords.size(), newWordIds, newWords.size(), symbolCount);
+		this.newWordIndex = newWordIndex;
+		this.indexed = newWordIndex != null;
+	}
+
+	/**
+	 * Compares sequences of ids that do not come from words, such as ids of
+	 * whole blocks.
+	 */
+	void reset(int[] oldIds, int oldSize, int[] newIds, int newSize, int symbolCount) {
+		this.oldWordIds = oldIds;
+		this.oldSize = oldSize;
+		this.newWordIds = newIds;
+		this.newSize = newSize;
+		this.symbolCount = symbolCount;
+		this.newWordIndex = null;
+		this.indexed = false;
+		this.indexStart = 0;
+		this.indexEnd = newSize;
+		this.sparseIndex = false;
+		this.maxDepth = 0;
+	}
+
+	/**
+	 * @return a second context with the same pool and budget, for a search
+	 *         nested in the one this context is used for; the same one every
+	 *         time.
+	 */
+	DiffContext nested() {
+		if (this.nested == null) {
+			this.nested = new DiffContext(this.pool, this.budget);
+		}
+		return this.nested;
+	}
+
+	/**
+	 * Lets go of the texts, of the nested context, and of the arrays when
+	 * together they are too large to keep.
+	 */
+	void release() {
+		this.oldWords = this.newWords = null;
+		this.oldWordIds = this.newWordIds = EMPTY;
+		this.newWordIndex = null;
+		this.indexed = false;
+		this.nested = null;
+		if (ownOldWords != null) {
+			ownOldWords.release();
+		}
+		if (ownNewWords != null) {
+			ownNewWords.release();
+		}
+		symbols.clear();
+		operations.setWords(null, null);
+		if (this.RetainedLength() > MAX_RETAINED_LENGTH) {
+			ownOldWords = ownNewWords = null;
+			ownOldWordIds = ownNewWordIds = EMPTY;
+			ownNewWordIndex = null;
+			symbols = new SymbolTable();
+			matchingBlocks = new Matches();
+			operations = new EditScript();
+			Arrays.fill(buffers, null);
+		}
+	}
+
+	/**
+	 * @return number of entries the arrays this context owns hold between them.
+	 */
+	private long RetainedLength() {
+		long length = ownOldWordIds.length + ownNewWordIds.length + symbols.capacity() + matchingBlocks.capacity()
+				+ operations.capacity();
+		if (ownOldWords != null) {
+			length += ownOldWords.capacity();
+		}
+		if (ownNewWords != null) {
+			length += ownNewWords.capacity();
+		}
+		if (ownNewWordIndex != null) {
+			length += ownNewWordIndex.capacity();
+		}
+		for (int[] buffer : buffers) {
+			if (buffer != null) {
+				length += buffer.length;
+			}
+		}
+		return length;
+	}
+
+	Words oldWords() {
+		return oldWords;
+	}
+
+	Words newWords() {
+		return newWords;
+	}
+
+	/**
+	 * @return cleared list of matching blocks to fill.
+	 */
+	Matches matchingBlocks() {
+		matchingBlocks.clear();
+		return matchingBlocks;
+	}
+
+	EditScript operations() {
+		return operations;
+	}
+
+	/**
+	 * @return pool to run parts of the search on, null to run it all on the
+	 *         calling thread.
+	 */
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * @return id of every old word; only the first {@link #getOldSize()} entries
+	 *         are used, not null.
+	 */
+	public int[] getOldWordIds() {
+		return oldWordIds;
+	}
+
+	public int getOldSize() {
+		return oldSize;
+	}
+
+	/**
+	 * @return id of every new word; only the first {@link #getNewSize()} entries
+	 *         are used, not null.
+	 */
+	public int[] getNewWordIds() {
+		return newWordIds;
+	}
+
+	public int getNewSize() {
+		return newSize;
+	}
+
+	/**
+	 * @return number of distinct word ids across both documents.
+	 */
+	public int getSymbolCount() {
+		return symbolCount;
+	}
+
+	/**
+	 * @return positions of every id in the new words, built on first use.
+	 */
+	public WordIndex getNewWordIndex() {
+		if (!indexed) {
+			ownNewWordIndex = sparseIndex ? WordIndex.buildSparse(newWordIds, indexStart, indexEnd, symbolCount,
+					ownNewWordIndex) : WordIndex.build(newWordIds, indexStart, indexEnd, symbolCount, ownNewWordIndex);
+			newWordIndex = ownNewWordIndex;
+			indexed = true;
+		}
+		return newWordIndex;
+	}
+
+	/**
+	 * Records how deeply an algorithm nested its search, counting the whole
+	 * range as 1. Only the largest depth reported since the ids were set is kept.
+	 */
+	public void reportDepth(int depth) {
+		if (depth > maxDepth) {
+			maxDepth = depth;
+		}
+	}
+
+	/**
+	 * @return largest depth reported, 0 if none.
+	 */
+	int maxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Limits the diffs that follow, each on its own, until set again.
+	 * @param timeNanos time a diff may take, 0 for no limit.
+	 * @param work units of work a diff may take, 0 for no limit.
+	 */
+	void setBudget(long timeNanos, long work) {
+		budget.set(timeNanos, work);
+	}
+
+	/**
+	 * Starts the budget over for a new diff.
+	 */
+	void startBudget() {
+		budget.start();
+	}
+
+	/**
+	 * Counts work done against the budget. A unit is about one comparison of
+	 * two words. Algorithms call this as they go, including with 0 before
+	 * starting on a range.
+	 * @return false once the budget is spent, after which the algorithm should
+	 *         stop refining: whatever it leaves unmatched is replaced as a
+	 *         whole.
+	 */
+	public boolean spend(long work) {
+		return budget.spend(work);
+	}
+
+	/**
+	 * @return whether the budget ran out during the current diff, so its result
+	 *         is coarser than it would otherwise be.
+	 */
+	public boolean isDegraded() {
+		return budget.exhausted;
+	}
+
+	/**
+	 * Time and work left for one diff, shared with the nested context and safe
+	 * to spend from several threads at once.
+	 */
+	private static final class Budget {
+
+		private long timeNanos, work;
+		private long deadline;
+		private final AtomicLong workLeft = new AtomicLong();
+		private volatile boolean exhausted;
+
+		void set(long timeNanos, long work) {
+			this.timeNanos = timeNanos;
+			this.work = work;
+		}
+
+		void start() {
+			this.deadline = System.nanoTime() + timeNanos;
+			this.workLeft.set(work);
+			this.exhausted = false;
+		}
+
+		boolean spend(long work) {
+			if (timeNanos <= 0 && this.work <= 0) {
+				return true;
+			}
+			if (exhausted) {
+				return false;
+			}
+			if ((this.work > 0 && workLeft.addAndGet(-work) < 0) || (timeNanos > 0 && System.nanoTime() - deadline > 0)) {
+				exhausted = true;
+				return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Scratch array, zeroed up to length. The same array may be handed out again
+	 * for the same slot, so callers must not hold on to it.
+	 * @param slot 0 to 3.
+	 * @return array of at least length elements, not null.
+	 */
+	public int[] getBuffer(int slot, int length) {
+		int[] buffer = buffers[slot];
+		if (buffer == null || buffer.length < length) {
+			buffer = new int[length];
+			buffers[slot] = buffer;
+		}
+		else {
+			Arrays.fill(buffer, 0, length, 0);
+		}
+		return buffer;
+	}
+
+}
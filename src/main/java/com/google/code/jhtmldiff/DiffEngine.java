@@ -0,0 +1,334 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable, thread-safe way to run many diffs with the same configuration.
+ * <p>
+ * Unlike {@link Diff}, which is built for one pair of texts, an engine can be
+ * shared by any number of threads. Each thread keeps its own word, index and
+ * match arrays between calls, so steady-state diffing reuses memory instead of
+ * allocating it afresh for every request.
+ * 
+ * <pre>
+ * DiffEngine engine = DiffEngine.DEFAULT.withAlgorithm(DiffAlgorithm.MYERS);
+ * String html = engine.diff(oldText, newText);
+ * </pre>
+ * <p>
+ * {@link #withPool(ForkJoinPool)} opts in to spreading a single large diff
+ * over a pool's workers. The output is the same as without it.
+ */
+public final class DiffEngine {
+
+	/**
+	 * Longest match algorithm, same as {@link Diff#Diff(String, String)}.
+	 */
+	public static final DiffEngine DEFAULT = new DiffEngine(DiffAlgorithm.LONGEST_MATCH);
+
+	private final DiffAlgorithm algorithm;
+	private final ForkJoinPool pool;
+	private final DiffListener listener;
+	private final DiffRenderer renderer;
+	private final long timeLimitNanos, workLimit;
+	private final ThreadLocal<DiffContext> contexts = new ThreadLocal<DiffContext>() {
+
+		protected DiffContext initialValue() {
+			return new DiffContext(pool);
+		}
+	};
+
+	/**
+	 * @param algorithm not null.
+	 */
+	public DiffEngine(DiffAlgorithm algorithm) {
+		this(algorithm, null, null, DiffRenderer.HTML, 0, 0);
+	}
+
+	private DiffEngine(DiffAlgorithm algorithm, ForkJoinPool pool, DiffListener listener, DiffRenderer renderer,
+			long timeLimitNanos, long workLimit) {
+		if (algorithm == null) {
+			throw new NullPointerException("algorithm");
+		}
+		if (renderer == null) {
+			throw new NullPointerException("renderer");
+		}
+		this.algorithm = algorithm;
+		this.pool = pool;
+		this.listener = listener;
+		this.renderer = renderer;
+		this.timeLimitNanos = timeLimitNanos;
+		this.workLimit = workLimit;
+	}
+
+	public DiffAlgorithm getAlgorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * @return pool large diffs are spread over, null if none.
+	 */
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * @return an engine like this one using algorithm, not null.
+	 */
+	public DiffEngine withAlgorithm(DiffAlgorithm algorithm) {
+		return new DiffEngine(algorithm, pool, listener, renderer, timeLimitNanos, workLimit);
+	}
+
+	/**
+	 * Large texts are then tokenized concurrently, and the longest match
+	 * algorithm searches large ranges as fork-join tasks. Other algorithms run
+	 * as before.
+	 * @param pool null to run each diff on the calling thread.
+	 * @return an engine like this one using pool, not null.
+	 */
+	public DiffEngine withPool(ForkJoinPool pool) {
+		return new DiffEngine(algorithm, pool, listener, renderer, timeLimitNanos, workLimit);
+	}
+
+	/**
+	 * @return listener told about every diff, null if none.
+	 */
+	public DiffListener getListener() {
+		return listener;
+	}
+
+	/**
+	 * Diffs are timed phase by phase and reported to listener. Without a
+	 * listener nothing is measured.
+	 * @param listener null for none.
+	 * @return an engine like this one using listener, not null.
+	 */
+	public DiffEngine withListener(DiffListener listener) {
+		return new DiffEngine(algorithm, pool, listener, renderer, timeLimitNanos, workLimit);
+	}
+
+	/**
+	 * @return renderer diffs are written with, not null.
+	 */
+	public DiffRenderer getRenderer() {
+		return renderer;
+	}
+
+	/**
+	 * @param renderer not null, {@link DiffRenderer#HTML} by default.
+	 * @return an engine like this one writing diffs with renderer, not null.
+	 */
+	public DiffEngine withRenderer(DiffRenderer renderer) {
+		return new DiffEngine(algorithm, pool, listener, renderer, timeLimitNanos, workLimit);
+	}
+
+	/**
+	 * @return time each diff may take in the given unit, 0 if unlimited.
+	 */
+	public long getTimeLimit(TimeUnit unit) {
+		return unit.convert(timeLimitNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Once a diff has taken this long, the algorithm stops refining and leaves
+	 * the rest unmatched, so the changed stretches it has not got to are
+	 * replaced as a whole. The diff is still valid, and reports that it was
+	 * degraded through {@link EditScript#isDegraded()} and the listener.
+	 * Tokenizing, indexing and rendering are not limited.
+	 * @param time 0 for no limit.
+	 * @return an engine like this one with the time limit, not null.
+	 */
+	public DiffEngine withTimeLimit(long time, TimeUnit unit) {
+		return new DiffEngine(algorithm, pool, listener, renderer, unit.toNanos(time), workLimit);
+	}
+
+	/**
+	 * @return units of work each diff may take, 0 if unlimited.
+	 */
+	public long getWorkLimit() {
+		return workLimit;
+	}
+
+	/**
+	 * Like {@link #withTimeLimit(long, TimeUnit)}, but counts work rather than
+	 * time, so that the same texts always give the same diff. A unit is about
+	 * one comparison of two words.
+	 * @param work 0 for no limit.
+	 * @return an engine like this one with the work limit, not null.
+	 */
+	public DiffEngine withWorkLimit(long work) {
+		return new DiffEngine(algorithm, pool, listener, renderer, timeLimitNanos, work);
+	}
+
+	/**
+	 * @return diff, not null.
+	 */
+	public String diff(String oldText, String newText) {
+		return build(new Diff(oldText, newText, algorithm, contexts.get()));
+	}
+
+	/**
+	 * @return diff against a document prepared earlier, not null.
+	 */
+	public String diff(PreparedDocument oldDocument, String newText) {
+		return build(new Diff(oldDocument, newText, algorithm, contexts.get()));
+	}
+
+	/**
+	 * @return diff against a document prepared earlier, not null.
+	 */
+	public String diff(String oldText, PreparedDocument newDocument) {
+		return build(new Diff(oldText, newDocument, algorithm, contexts.get()));
+	}
+
+	/**
+	 * Writes the diff to out as it is rendered. Nothing is flushed or closed.
+	 * @throws IOException if out does.
+	 */
+	public void diff(String oldText, String newText, Appendable out) throws IOException {
+		build(new Diff(oldText, newText, algorithm, contexts.get()), out);
+	}
+
+	/**
+	 * @see #diff(String, String, Appendable)
+	 */
+	public void diff(PreparedDocument oldDocument, String newText, Appendable out) throws IOException {
+		build(new Diff(oldDocument, newText, algorithm, contexts.get()), out);
+	}
+
+	/**
+	 * @see #diff(String, String, Appendable)
+	 */
+	public void diff(String oldText, PreparedDocument newDocument, Appendable out) throws IOException {
+		build(new Diff(oldText, newDocument, algorithm, contexts.get()), out);
+	}
+
+	/**
+	 * Diffs without rendering. The listener is not told.
+	 * @return the operations that turn the old text into the new, not null.
+	 */
+	public EditScript editScript(String oldText, String newText) {
+		return editScript(new Diff(oldText, newText, algorithm, contexts.get()));
+	}
+
+	/**
+	 * @see #editScript(String, String)
+	 */
+	public EditScript editScript(PreparedDocument oldDocument, String newText) {
+		return editScript(new Diff(oldDocument, newText, algorithm, contexts.get()));
+	}
+
+	/**
+	 * @see #editScript(String, String)
+	 */
+	public EditScript editScript(String oldText, PreparedDocument newDocument) {
+		return editScript(new Diff(oldText, newDocument, algorithm, contexts.get()));
+	}
+
+	/**
+	 * @return similarity of the texts from 0 to 1, see {@link Diff#similarity()}.
+	 */
+	public double similarity(String oldText, String newText) {
+		return similarity(new Diff(oldText, newText, algorithm, contexts.get()), 0);
+	}
+
+	/**
+	 * Checks cheap upper bounds first, so that pairs that cannot reach minimum
+	 * are turned down without being matched, which suits triaging many
+	 * candidate pairs.
+	 * @return the similarity if it is at least minimum, otherwise a number
+	 *         below minimum that is at least the similarity. If a limit stops
+	 *         the matching, a number at least the similarity.
+	 */
+	public double similarity(String oldText, String newText, double minimum) {
+		return similarity(new Diff(oldText, newText, algorithm, contexts.get()), minimum);
+	}
+
+	/**
+	 * @see #similarity(String, String, double)
+	 */
+	public double similarity(PreparedDocument oldDocument, String newText, double minimum) {
+		return similarity(new Diff(oldDocument, newText, algorithm, contexts.get()), minimum);
+	}
+
+	private double similarity(Diff diff, double minimum) {
+		DiffContext context = contexts.get();
+		try {
+			context.setBudget(timeLimitNanos, workLimit);
+			return diff.similarity(minimum);
+		}
+		finally {
+			context.release();
+		}
+	}
+
+	private EditScript editScript(Diff diff) {
+		DiffContext context = contexts.get();
+		try {
+			context.setBudget(timeLimitNanos, workLimit);
+			return diff.editScript();
+		}
+		finally {
+			context.release();
+		}
+	}
+
+	private String build(Diff diff) {
+		StringBuilder out = new StringBuilder();
+		try {
+			build(diff, out);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Like {@link #diff(String, String, Appendable)}, for callers that must
+	 * tell apart diffs a limit cut short.
+	 * @return whether the diff ran out of its budget, see
+	 *         {@link EditScript#isDegraded()}.
+	 */
+	boolean build(String oldText, String newText, Appendable out) throws IOException {
+		return build(new Diff(oldText, newText, algorithm, contexts.get()), out);
+	}
+
+	private boolean build(Diff diff, Appendable out) throws IOException {
+		DiffContext context = contexts.get();
+		try {
+			context.setBudget(timeLimitNanos, workLimit);
+			diff.setListener(listener);
+			diff.setRenderer(renderer);
+			diff.build(out);
+			return context.isDegraded();
+		}
+		finally {
+			context.release();
+		}
+	}
+
+}
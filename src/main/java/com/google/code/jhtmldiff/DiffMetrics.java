@@ -0,0 +1,168 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Listener that totals the statistics of every diff, for JMX.
+ * 
+ * <pre>
+ * DiffMetrics metrics = new DiffMetrics();
+ * metrics.register("reviews");
+ * DiffEngine engine = DiffEngine.DEFAULT.withListener(metrics);
+ * </pre>
+ */
+public final class DiffMetrics implements DiffListener, DiffMetricsMXBean {
+
+	private final AtomicLong diffCount = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+	private final AtomicLong tokenizeNanos = new AtomicLong();
+	private final AtomicLong matchNanos = new AtomicLong();
+	private final AtomicLong renderNanos = new AtomicLong();
+	private final AtomicLong outputLength = new AtomicLong();
+	private final AtomicLong maxDepth = new AtomicLong();
+	private final AtomicLong slowDiffCount = new AtomicLong();
+	private final AtomicLong degradedDiffCount = new AtomicLong();
+	private volatile long slowThresholdNanos = 1000L * 1000 * 1000;
+	private volatile DiffStatistics lastSlowDiff;
+
+	public void diffCompleted(DiffStatistics statistics) {
+		long nanos = statistics.getTotalNanos();
+		diffCount.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		Max(maxNanos, nanos);
+		tokenizeNanos.addAndGet(statistics.getTokenizeNanos());
+		matchNanos.addAndGet(statistics.getMatchNanos());
+		renderNanos.addAndGet(statistics.getRenderNanos());
+		outputLength.addAndGet(statistics.getOutputLength());
+		Max(maxDepth, statistics.getMaxDepth());
+		if (statistics.isDegraded()) {
+			degradedDiffCount.incrementAndGet();
+		}
+		if (nanos >= slowThresholdNanos) {
+			slowDiffCount.incrementAndGet();
+			lastSlowDiff = statistics;
+		}
+	}
+
+	private static void Max(AtomicLong max, long value) {
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+		}
+	}
+
+	/**
+	 * Registers with the platform MBean server as
+	 * <code>com.google.code.jhtmldiff:type=DiffMetrics,name=</code><i>name</i>.
+	 * @return the name registered under, not null.
+	 * @throws JMException if the name is taken or invalid.
+	 */
+	public ObjectName register(String name) throws JMException {
+		ObjectName objectName = new ObjectName("com.google.code.jhtmldiff:type=DiffMetrics,name="
+				+ ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+
+	public long getDiffCount() {
+		return diffCount.get();
+	}
+
+	public long getTotalNanos() {
+		return totalNanos.get();
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	public long getTokenizeNanos() {
+		return tokenizeNanos.get();
+	}
+
+	public long getMatchNanos() {
+		return matchNanos.get();
+	}
+
+	public long getRenderNanos() {
+		return renderNanos.get();
+	}
+
+	public long getOutputLength() {
+		return outputLength.get();
+	}
+
+	public int getMaxDepth() {
+		return (int) maxDepth.get();
+	}
+
+	public long getSlowThresholdMillis() {
+		return slowThresholdNanos / (1000 * 1000);
+	}
+
+	public void setSlowThresholdMillis(long slowThresholdMillis) {
+		this.slowThresholdNanos = slowThresholdMillis * 1000 * 1000;
+	}
+
+	public long getSlowDiffCount() {
+		return slowDiffCount.get();
+	}
+
+	public long getDegradedDiffCount() {
+		return degradedDiffCount.get();
+	}
+
+	/**
+	 * @return statistics of the latest slow diff, null if there has been none.
+	 */
+	public DiffStatistics getLastSlowDiffStatistics() {
+		return lastSlowDiff;
+	}
+
+	public String getLastSlowDiff() {
+		DiffStatistics statistics = lastSlowDiff;
+		return statistics == null ? null : statistics.toString();
+	}
+
+	public void reset() {
+		diffCount.set(0);
+		totalNanos.set(0);
+		maxNanos.set(0);
+		tokenizeNanos.set(0);
+		matchNanos.set(0);
+		renderNanos.set(0);
+		outputLength.set(0);
+		maxDepth.set(0);
+		slowDiffCount.set(0);
+		degradedDiffCount.set(0);
+		lastSlowDiff = null;
+	}
+
+}
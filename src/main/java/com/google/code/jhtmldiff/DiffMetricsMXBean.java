@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+/**
+ * Management interface of {@link DiffMetrics}. Times are totals since the
+ * metrics were created or last reset.
+ */
+public interface DiffMetricsMXBean {
+
+	long getDiffCount();
+
+	long getTotalNanos();
+
+	long getMaxNanos();
+
+	long getTokenizeNanos();
+
+	long getMatchNanos();
+
+	long getRenderNanos();
+
+	/**
+	 * @return characters written by all diffs.
+	 */
+	long getOutputLength();
+
+	/**
+	 * @return deepest search of any diff.
+	 */
+	int getMaxDepth();
+
+	long getSlowThresholdMillis();
+
+	void setSlowThresholdMillis(long slowThresholdMillis);
+
+	/**
+	 * @return number of diffs that took at least the slow threshold.
+	 */
+	long getSlowDiffCount();
+
+	/**
+	 * @return number of diffs that ran out of their budget and were finished
+	 *         coarsely.
+	 */
+	long getDegradedDiffCount();
+
+	/**
+	 * @return statistics of the latest slow diff, including its input sizes,
+	 *         null if there has been none.
+	 */
+	String getLastSlowDiff();
+
+	void reset();
+
+}
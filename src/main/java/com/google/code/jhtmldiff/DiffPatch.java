@@ -0,0 +1,267 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+import com.google.code.jhtmldiff.Diff.Action;
+
+/**
+ * Compact binary form of an {@link EditScript}, from which the diff can be
+ * rendered again, or the new text rebuilt, given only the old text.
+ * <p>
+ * A patch holds a header identifying the old text, then one record per
+ * operation: the action, the number of old and new words it covers as
+ * varints, and for inserts and replaces the inserted text as UTF-8. Equal
+ * and deleted text is taken from the old text, so a patch is about as large
+ * as the inserted text. Patches are written and read an operation at a time.
+ * 
+ * <pre>
+ * DiffPatch.write(engine.editScript(oldText, newText), out);
+ * ...
+ * DiffRenderer.HTML.render(DiffPatch.read(oldText, in), html);
+ * </pre>
+ */
+public final class DiffPatch {
+
+	private static final int MAGIC = 0x4a445031; // "JDP1"
+	private static final int END = 0xff;
+	private static final Action[] ACTIONS = Action.values();
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private DiffPatch() {
+	}
+
+	/**
+	 * Writes the script to out. Nothing is flushed or closed.
+	 * @throws IOException if out does.
+	 */
+	public static void write(EditScript script, OutputStream out) throws IOException {
+		String oldText = script.getOldText();
+		String newText = script.getNewText();
+		WriteInt(out, MAGIC);
+		WriteVarint(out, oldText.length());
+		WriteInt(out, Checksum(oldText));
+		for (int i = 0; i < script.size(); i++) {
+			Action action = script.action(i);
+			out.write(action.ordinal());
+			WriteVarint(out, script.endInOld(i) - script.startInOld(i));
+			WriteVarint(out, script.endInNew(i) - script.startInNew(i));
+			if (action == Action.insert || action == Action.replace) {
+				byte[] inserted = newText.substring(script.charStartInNew(i), script.charEndInNew(i)).getBytes(UTF_8);
+				WriteVarint(out, inserted.length);
+				out.write(inserted);
+			}
+		}
+		out.write(END);
+	}
+
+	/**
+	 * Reads a patch written for oldText back into an edit script, ready to
+	 * render.
+	 * @throws IOException if in does, or the patch is corrupt or was written
+	 *             for a different text.
+	 */
+	public static EditScript read(String oldText, InputStream in) throws IOException {
+		Words oldWords = Words.tokenize(oldText);
+		StringBuilder newText = new StringBuilder(oldText.length());
+		EditScript script = new EditScript();
+		int positionInOld = 0, positionInNew = 0;
+		ReadHeader(oldText, in);
+		for (int action = ReadByte(in); action != END; action = ReadByte(in)) {
+			int oldCount = ReadVarint(in);
+			int newCount = ReadVarint(in);
+			CheckOperation(action, oldCount, newCount, positionInOld, oldWords);
+			ApplyOperation(ACTIONS[action], oldWords, positionInOld, oldCount, newCount, in, newText);
+			script.add(ACTIONS[action], positionInOld, positionInOld + oldCount, positionInNew, positionInNew
+					+ newCount);
+			positionInOld += oldCount;
+			positionInNew += newCount;
+		}
+
+		Words newWords = Words.tokenize(newText.toString());
+		if (positionInOld != oldWords.size() || positionInNew != newWords.size()) {
+			throw new IOException("corrupt patch: operations do not cover the texts");
+		}
+		script.setWords(oldWords, newWords);
+		return script;
+	}
+
+	/**
+	 * Rebuilds the new text from oldText and a patch written for it, writing it
+	 * to out as each operation is read. Nothing is flushed or closed.
+	 * @throws IOException if in or out does, or the patch is corrupt or was
+	 *             written for a different text.
+	 */
+	public static void apply(String oldText, InputStream in, Appendable out) throws IOException {
+		Words oldWords = Words.tokenize(oldText);
+		int positionInOld = 0;
+		ReadHeader(oldText, in);
+		for (int action = ReadByte(in); action != END; action = ReadByte(in)) {
+			int oldCount = ReadVarint(in);
+			int newCount = ReadVarint(in);
+			CheckOperation(action, oldCount, newCount, positionInOld, oldWords);
+			ApplyOperation(ACTIONS[action], oldWords, positionInOld, oldCount, newCount, in, out);
+			positionInOld += oldCount;
+		}
+		if (positionInOld != oldWords.size()) {
+			throw new IOException("corrupt patch: operations do not cover the old text");
+		}
+	}
+
+	private static void ApplyOperation(Action action, Words oldWords, int positionInOld, int oldCount,
+			int newCount, InputStream in, Appendable out) throws IOException {
+		switch (action) {
+			case equal:
+				out.append(oldWords.getText(), oldWords.start(positionInOld), oldWords.start(positionInOld
+						+ oldCount));
+				break;
+			case insert:
+			case replace:
+				String inserted = new String(ReadBytes(in, ReadVarint(in)), UTF_8);
+				if (Words.tokenize(inserted).size() != newCount) {
+					throw new IOException("corrupt patch: inserted text does not hold " + newCount + " words");
+				}
+				out.append(inserted);
+				break;
+			default:
+				break;
+		}
+	}
+
+	private static void CheckOperation(int action, int oldCount, int newCount, int positionInOld, Words oldWords)
+			throws IOException {
+		if (action >= ACTIONS.length || ACTIONS[action] == Action.none) {
+			throw new IOException("corrupt patch: unknown action " + action);
+		}
+		if (oldCount > oldWords.size() - positionInOld) {
+			throw new IOException("corrupt patch: operation runs past the old text");
+		}
+		boolean counts;
+		switch (ACTIONS[action]) {
+			case equal:
+				counts = oldCount == newCount;
+				break;
+			case insert:
+				counts = oldCount == 0;
+				break;
+			case delete:
+				counts = newCount == 0;
+				break;
+			default:
+				counts = true;
+				break;
+		}
+		if (!counts) {
+			throw new IOException("corrupt patch: " + ACTIONS[action] + " of " + oldCount + " old and " + newCount
+					+ " new words");
+		}
+	}
+
+	private static void ReadHeader(String oldText, InputStream in) throws IOException {
+		if (ReadInt(in) != MAGIC) {
+			throw new IOException("not a patch");
+		}
+		if (ReadVarint(in) != oldText.length() || ReadInt(in) != Checksum(oldText)) {
+			throw new IOException("patch was written for a different text");
+		}
+	}
+
+	private static int Checksum(String text) {
+		CRC32 crc = new CRC32();
+		crc.update(text.getBytes(UTF_8));
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Unsigned LEB128: seven bits per byte, low bits first, high bit set on
+	 * every byte but the last.
+	 */
+	private static void WriteVarint(OutputStream out, int value) throws IOException {
+		while ((value & ~0x7f) != 0) {
+			out.write((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private static int ReadVarint(InputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = ReadByte(in);
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				if (value < 0) {
+					break;
+				}
+				return value;
+			}
+		}
+		throw new IOException("corrupt patch: varint out of range");
+	}
+
+	private static void WriteInt(OutputStream out, int value) throws IOException {
+		out.write(value >>> 24);
+		out.write(value >>> 16);
+		out.write(value >>> 8);
+		out.write(value);
+	}
+
+	private static int ReadInt(InputStream in) throws IOException {
+		return ReadByte(in) << 24 | ReadByte(in) << 16 | ReadByte(in) << 8 | ReadByte(in);
+	}
+
+	private static int ReadByte(InputStream in) throws IOException {
+		int b = in.read();
+		if (b < 0) {
+			throw new EOFException("patch ends early");
+		}
+		return b;
+	}
+
+	/**
+	 * Reads length bytes a buffer at a time, so a corrupt length runs into the
+	 * end of the patch rather than allocating it all up front.
+	 */
+	private static byte[] ReadBytes(InputStream in, int length) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.min(length, 8192));
+		byte[] buffer = new byte[Math.min(length, 8192)];
+		while (length > 0) {
+			int n = in.read(buffer, 0, Math.min(length, buffer.length));
+			if (n < 0) {
+				throw new EOFException("patch ends early");
+			}
+			bytes.write(buffer, 0, n);
+			length -= n;
+		}
+		return bytes.toByteArray();
+	}
+
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import java.io.IOException;
+
+/**
+ * Turns an {@link EditScript} into output.
+ * <p>
+ * Implementations must be stateless, so one renderer can be shared by any
+ * number of threads.
+ */
+public interface DiffRenderer {
+
+	/**
+	 * The new text with deletions and insertions wrapped in &lt;del&gt; and
+	 * &lt;ins&gt; with the classes diffdel, diffins and diffmod. This is what
+	 * {@link Diff#build()} returns.
+	 */
+	DiffRenderer HTML = new HtmlRenderer();
+
+	/**
+	 * A JSON object listing every operation with its word and character ranges,
+	 * without any of the text.
+	 * @see JsonRenderer
+	 */
+	DiffRenderer JSON = new JsonRenderer();
+
+	/**
+	 * The new text with deletions in red and insertions in green, using ANSI
+	 * escapes, for reading in a terminal.
+	 */
+	DiffRenderer ANSI = new AnsiRenderer();
+
+	/**
+	 * Writes the script to out. Nothing is flushed or closed.
+	 * @throws IOException if out does.
+	 */
+	void render(EditScript script, Appendable out) throws IOException;
+
+}
@@ -0,0 +1,283 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves diffs over HTTP from one long-lived engine, so callers pay for JVM
+ * startup and warm-up once rather than per diff.
+ * <ul>
+ * <li><code>POST /diff</code> with a form-encoded body of <code>old</code>,
+ * <code>new</code> and optionally <code>format</code> (html, json or ansi)
+ * returns the diff.</li>
+ * <li><code>GET /health</code> returns 200 while the server is running.</li>
+ * <li><code>GET /stats</code> returns request and diff counters as JSON.</li>
+ * </ul>
+ * Diff requests are handled on a fixed number of threads. Once their queue is
+ * full too, or the server is stopping, further diff requests are answered
+ * with 503 straight away.
+ */
+public final class DiffServer {
+
+	/** Largest request body accepted, in bytes. */
+	static final int MAX_BODY_LENGTH = 64 << 20;
+	/** Diff requests queued per thread before more are turned away. */
+	static final int QUEUE_PER_THREAD = 16;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final HttpServer server;
+	private final ThreadPoolExecutor executor;
+	private final DiffMetrics metrics;
+	private final Map<String, DiffEngine> engines = new HashMap<String, DiffEngine>();
+	private final AtomicLong requests = new AtomicLong(), failures = new AtomicLong(), rejected = new AtomicLong();
+	private final AtomicInteger active = new AtomicInteger();
+	private long startMillis;
+
+	/**
+	 * @param address where to listen; port 0 picks a free one.
+	 * @param engine diffs every request, with its own renderer replaced as the
+	 *        format asks.
+	 * @param threads requests handled at once.
+	 * @param metrics listener totalling every diff, which is also given to the
+	 *        engine.
+	 * @throws IOException if the address cannot be bound.
+	 */
+	public DiffServer(InetSocketAddress address, DiffEngine engine, int threads, DiffMetrics metrics)
+			throws IOException {
+		this.metrics = metrics;
+		engine = engine.withListener(metrics);
+		// One engine per format, so each keeps its warmed per-thread context.
+		engines.put("html", engine.withRenderer(DiffRenderer.HTML));
+		engines.put("json", engine.withRenderer(DiffRenderer.JSON));
+		engines.put("ansi", engine.withRenderer(DiffRenderer.ANSI));
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(threads * QUEUE_PER_THREAD), new RejectedExecutionHandler() {
+
+					public void rejectedExecution(Runnable request, ThreadPoolExecutor executor) {
+						((Request) request).reject();
+					}
+				});
+		// Without an executor of its own the server calls the handlers on the
+		// thread accepting connections: the ones below are quick, and /diff
+		// only hands the exchange to the workers.
+		server = HttpServer.create(address, 0);
+		server.createContext("/diff", new HttpHandler() {
+
+			public void handle(HttpExchange exchange) {
+				executor.execute(new Request(exchange));
+			}
+		});
+		server.createContext("/health", new HttpHandler() {
+
+			public void handle(HttpExchange exchange) throws IOException {
+				Respond(exchange, 200, "text/plain", "ok\n");
+			}
+		});
+		server.createContext("/stats", new HttpHandler() {
+
+			public void handle(HttpExchange exchange) throws IOException {
+				Respond(exchange, 200, "application/json", Stats());
+			}
+		});
+	}
+
+	public void start() {
+		startMillis = System.currentTimeMillis();
+		server.start();
+	}
+
+	/**
+	 * Stops accepting requests, waits up to delaySeconds for those being
+	 * handled, then stops the threads.
+	 */
+	public void stop(int delaySeconds) {
+		server.stop(delaySeconds);
+		executor.shutdown();
+	}
+
+	/**
+	 * @return the address listened on, with the port picked if 0 was asked for.
+	 */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	private void HandleDiff(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		active.incrementAndGet();
+		try {
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				exchange.getResponseHeaders().set("Allow", "POST");
+				Respond(exchange, 405, "text/plain", "POST old and new as a form\n");
+				return;
+			}
+			byte[] body = ReadBody(exchange.getRequestBody());
+			if (body == null) {
+				Respond(exchange, 413, "text/plain", "request body over " + MAX_BODY_LENGTH + " bytes\n");
+				return;
+			}
+			Map<String, String> form;
+			try {
+				form = ParseForm(new String(body, UTF_8));
+			} catch (IllegalArgumentException e) {
+				// URLDecoder rejects malformed escapes.
+				Respond(exchange, 400, "text/plain", "malformed form: " + e.getMessage() + "\n");
+				return;
+			}
+			String oldText = form.get("old"), newText = form.get("new");
+			String format = form.containsKey("format") ? form.get("format") : "html";
+			DiffEngine engine = engines.get(format);
+			if (oldText == null || newText == null || engine == null) {
+				Respond(exchange, 400, "text/plain", "expected old, new and optionally format (html, json or ansi)\n");
+				return;
+			}
+			String type = format.equals("json") ? "application/json" : format.equals("ansi") ? "text/plain"
+					: "text/html";
+			Respond(exchange, 200, type, engine.diff(oldText, newText));
+		} catch (RuntimeException e) {
+			failures.incrementAndGet();
+			Respond(exchange, 500, "text/plain", e + "\n");
+		}
+		finally {
+			active.decrementAndGet();
+			exchange.close();
+		}
+	}
+
+	/**
+	 * A diff request waiting for a worker.
+	 */
+	private final class Request implements Runnable {
+
+		private final HttpExchange exchange;
+
+		Request(HttpExchange exchange) {
+			this.exchange = exchange;
+		}
+
+		public void run() {
+			try {
+				HandleDiff(exchange);
+			} catch (IOException e) {
+				// The client went away; the exchange is closed already.
+			}
+		}
+
+		/**
+		 * Turns the request away when the workers are busy or stopped.
+		 */
+		void reject() {
+			requests.incrementAndGet();
+			rejected.incrementAndGet();
+			try {
+				exchange.getResponseHeaders().set("Retry-After", "1");
+				Respond(exchange, 503, "text/plain", "busy, try again later\n");
+			} catch (IOException e) {
+			}
+			finally {
+				exchange.close();
+			}
+		}
+	}
+
+	private String Stats() {
+		StringBuilder s = new StringBuilder();
+		s.append("{\"uptimeMillis\":").append(System.currentTimeMillis() - startMillis);
+		s.append(",\"requests\":").append(requests.get());
+		s.append(",\"failures\":").append(failures.get());
+		s.append(",\"rejected\":").append(rejected.get());
+		s.append(",\"active\":").append(active.get());
+		s.append(",\"queued\":").append(executor.getQueue().size());
+		s.append(",\"diffs\":").append(metrics.getDiffCount());
+		s.append(",\"diffNanos\":").append(metrics.getTotalNanos());
+		s.append(",\"maxDiffNanos\":").append(metrics.getMaxNanos());
+		s.append(",\"slowDiffs\":").append(metrics.getSlowDiffCount());
+		s.append(",\"degradedDiffs\":").append(metrics.getDegradedDiffCount());
+		return s.append("}\n").toString();
+	}
+
+	/**
+	 * @return the whole body, null if it is over MAX_BODY_LENGTH.
+	 */
+	private static byte[] ReadBody(InputStream in) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream(8192);
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) >= 0) {
+			if (body.size() + read > MAX_BODY_LENGTH) {
+				return null;
+			}
+			body.write(buffer, 0, read);
+		}
+		return body.toByteArray();
+	}
+
+	private static Map<String, String> ParseForm(String body) throws IOException {
+		Map<String, String> form = new HashMap<String, String>();
+		for (String field : body.split("&")) {
+			if (field.length() == 0) {
+				continue;
+			}
+			int equals = field.indexOf('=');
+			String name = equals < 0 ? field : field.substring(0, equals);
+			String value = equals < 0 ? "" : field.substring(equals + 1);
+			form.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+		}
+		return form;
+	}
+
+	private static void Respond(HttpExchange exchange, int status, String type, String body) throws IOException {
+		byte[] bytes = body.getBytes(UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", type + "; charset=UTF-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			out.write(bytes);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+}
@@ -0,0 +1,352 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Keeps a diff against a fixed old document up to date while the new text is
+ * edited, as in a live preview.
+ * <p>
+ * An edit re-tokenizes the new text only from the word before the edit up to
+ * the first word boundary after it that the text had before the edit, since
+ * tokenizing from a boundary on does not depend on anything before it, and
+ * interns only the words it tokenized. The matching blocks on either side of
+ * the edit are kept; only the words between the nearest kept blocks are
+ * matched again, against the old document's prepared ids. Tokenizing and
+ * matching thus cost about as much as the edit and the changed stretch
+ * around it, while the rest of the document is only copied.
+ * <p>
+ * Because the rest is not matched again, the diff after several edits can
+ * differ from a fresh {@link Diff} of the same texts, though it is always a
+ * valid diff of them. A session is not thread-safe.
+ * 
+ * <pre>
+ * DiffSession session = new DiffSession(PreparedDocument.prepare(published), draft);
+ * session.edit(caret, 0, "x");
+ * String html = session.build();
+ * </pre>
+ */
+public final class DiffSession {
+
+	/** Characters re-tokenized past an edit at first, doubled until in sync. */
+	private static final int RESYNC_SPAN = 64;
+	/** Words interned into the overflow table at least between rebuilds. */
+	private static final int MIN_OVERFLOW = 1024;
+
+	private final PreparedDocument oldDocument;
+	private final DiffAlgorithm algorithm;
+	private final DiffContext context = new DiffContext();
+	private Words newWords;
+	/** Ids agreeing with the old document's, see {@link PreparedDocument#intern}. */
+	private int[] newWordIds, editedWordIds;
+	/**
+	 * Words of the new text the old document does not contain, and of earlier
+	 * versions of it, until the table is rebuilt.
+	 */
+	private SymbolTable overflow;
+	/** Size of the overflow table at which it is rebuilt. */
+	private int overflowLimit;
+	private Matches matches = new Matches(), spare = new Matches();
+	private final EditScript operations = new EditScript();
+
+	/**
+	 * @param oldDocument not null.
+	 * @param newText not null.
+	 */
+	public DiffSession(PreparedDocument oldDocument, String newText) {
+		this(oldDocument, newText, DiffAlgorithm.LONGEST_MATCH);
+	}
+
+	/**
+	 * @param algorithm matches the whole texts at first, then the stretches
+	 *        around edits, not null.
+	 */
+	public DiffSession(PreparedDocument oldDocument, String newText, DiffAlgorithm algorithm) {
+		if (algorithm == null) {
+			throw new NullPointerException("algorithm");
+		}
+		this.oldDocument = oldDocument;
+		this.algorithm = algorithm;
+		Diff diff = new Diff(oldDocument, newText, algorithm, context);
+		try {
+			diff.split();
+			Matches found = diff.matches();
+			for (int i = 0; i < found.size(); i++) {
+				this.matches.add(found.startInOld(i), found.startInNew(i), found.length(i));
+			}
+			this.newWords = context.newWords().copy();
+			this.newWordIds = Arrays.copyOf(context.getNewWordIds(), this.newWords.size());
+			this.overflow = context.takeSymbols();
+			this.overflowLimit = OverflowLimit();
+		}
+		finally {
+			context.release();
+		}
+	}
+
+	public String getNewText() {
+		return newWords.getText();
+	}
+
+	/**
+	 * Replaces removedLength characters of the new text at offset with
+	 * insertedText and updates the diff.
+	 * @throws IndexOutOfBoundsException if the removed range is not within the
+	 *             new text.
+	 */
+	public void edit(int offset, int removedLength, String insertedText) {
+		String text = newWords.getText();
+		if (offset < 0 || removedLength < 0 || offset + removedLength > text.length()) {
+			throw new IndexOutOfBoundsException("offset " + offset + ", length " + removedLength + " in "
+					+ text.length());
+		}
+		String edited = new StringBuilder(text.length() + insertedText.length() - removedLength).append(text, 0,
+				offset).append(insertedText).append(text, offset + removedLength, text.length()).toString();
+		int delta = edited.length() - text.length();
+		int editEnd = offset + insertedText.length();
+
+		// Words before the one holding the character ahead of the edit stay as
+		// they are; from there, tokenize until a boundary past the edit is also
+		// one of the unedited text's.
+		int first = offset == 0 ? 0 : WordAt(newWords, offset - 1);
+		int start = newWords.start(first);
+		int after = FirstAtOrAfter(newWords, offset + removedLength);
+		Words middle = null;
+		int middleSize = -1, resume = -1;
+		for (int span = RESYNC_SPAN; middleSize < 0; span *= 2) {
+			int windowEnd = (int) Math.min(edited.length(), (long) editEnd + span);
+			middle = Words.tokenize(edited.substring(start, windowEnd));
+			// The window's last word may go on past it, so its end is no boundary.
+			int last = windowEnd == edited.length() ? middle.size() : middle.size() - 1;
+			int j = after;
+			for (int k = 0; k <= last; k++) {
+				int boundary = start + middle.start(k);
+				if (boundary < editEnd) {
+					continue;
+				}
+				while (j < newWords.size() && newWords.start(j) < boundary - delta) {
+					j++;
+				}
+				if (newWords.start(j) == boundary - delta) {
+					middleSize = k;
+					resume = j;
+					break;
+				}
+			}
+		}
+
+		int wordDelta = middleSize - (resume - first);
+		editedWordIds = oldDocument.intern(middle, 0, middleSize, overflow, editedWordIds);
+		newWordIds = Splice(newWordIds, newWords.size(), first, resume, editedWordIds, middleSize);
+		newWords = newWords.splice(edited, first, resume, middle, middleSize, start);
+		if (overflow.size() > overflowLimit) {
+			// Mostly words typed on the way to others by now. At least as many
+			// words were interned since the last rebuild as the text has, so
+			// rebuilding costs little per edit overall.
+			overflow = new SymbolTable();
+			newWordIds = oldDocument.intern(newWords, overflow, newWordIds);
+			overflowLimit = OverflowLimit();
+		}
+		this.Update(first, resume, first + middleSize, wordDelta);
+	}
+
+	private int OverflowLimit() {
+		return 2 * overflow.size() + Math.max(MIN_OVERFLOW, newWords.size());
+	}
+
+	/**
+	 * Replaces ids from up to to with the first count of inserted ones, in
+	 * place if ids is long enough.
+	 * @return the ids, not null.
+	 */
+	private static int[] Splice(int[] ids, int size, int from, int to, int[] inserted, int count) {
+		int newSize = size + count - (to - from);
+		if (newSize > ids.length) {
+			ids = Arrays.copyOf(ids, Math.max(newSize, ids.length + (ids.length >> 1)));
+		}
+		System.arraycopy(ids, to, ids, from + count, size - to);
+		System.arraycopy(inserted, 0, ids, from, count);
+		return ids;
+	}
+
+	/**
+	 * Keeps the matching blocks outside the edited words, and matches again
+	 * between the nearest ones left on either side.
+	 * @param first first edited word.
+	 * @param resume word past the edited words, before the edit.
+	 * @param end word past the edited words, after the edit.
+	 */
+	private void Update(int first, int resume, int end, int wordDelta) {
+		Matches matches = this.matches, updated = this.spare;
+		updated.clear();
+		int oldSize = oldDocument.size(), newSize = newWords.size();
+
+		int before = 0;
+		while (before < matches.size() && matches.startInNew(before) < first) {
+			before++;
+		}
+		int startInOld = 0, startInNew = 0;
+		for (int i = 0; i < before; i++) {
+			int length = Math.min(matches.length(i), first - matches.startInNew(i));
+			if (i == before - 1) {
+				// Leave the whitespace next to the change to the search, which
+				// attaches it to the edit.
+				while (length > 0 && this.IsWhiteSpaceWord(matches.startInNew(i) + length - 1)) {
+					length--;
+				}
+			}
+			if (length > 0) {
+				updated.add(matches.startInOld(i), matches.startInNew(i), length);
+				startInOld = matches.startInOld(i) + length;
+				startInNew = matches.startInNew(i) + length;
+			}
+		}
+
+		int next = 0;
+		while (next < matches.size() && matches.startInNew(next) + matches.length(next) <= resume) {
+			next++;
+		}
+		int endInOld = oldSize, endInNew = newSize;
+		int nextStartInOld = 0, nextStartInNew = 0, nextLength = 0;
+		if (next < matches.size()) {
+			int skipped = Math.max(0, resume - matches.startInNew(next));
+			nextStartInOld = matches.startInOld(next) + skipped;
+			nextStartInNew = matches.startInNew(next) + skipped + wordDelta;
+			nextLength = matches.length(next) - skipped;
+			while (nextLength > 0 && this.IsWhiteSpaceWord(nextStartInNew)) {
+				nextStartInOld++;
+				nextStartInNew++;
+				nextLength--;
+			}
+			endInOld = nextStartInOld;
+			endInNew = nextStartInNew;
+		}
+
+		this.Rematch(startInOld, endInOld, startInNew, endInNew, updated);
+		if (nextLength > 0) {
+			updated.add(nextStartInOld, nextStartInNew, nextLength);
+		}
+		for (int i = next + 1; i < matches.size(); i++) {
+			updated.add(matches.startInOld(i), matches.startInNew(i) + wordDelta, matches.length(i));
+		}
+		this.spare = matches;
+		this.matches = updated;
+	}
+
+	/**
+	 * Matches the given ranges of the old document's prepared ids and the new
+	 * ids as a Diff of them would, indexing only the new range, and adds the
+	 * matching blocks found.
+	 */
+	private void Rematch(int startInOld, int endInOld, int startInNew, int endInNew, Matches out) {
+		if (startInOld >= endInOld || startInNew >= endInNew) {
+			return;
+		}
+		context.reset(oldDocument, newWords, newWordIds, oldDocument.symbolCount() + overflow.size(), startInNew,
+				endInNew);
+		try {
+			Diff.FindMatchingBlocks(algorithm, context, newWords, startInOld, endInOld, startInNew, endInNew, out);
+		}
+		finally {
+			context.release();
+		}
+	}
+
+	private boolean IsWhiteSpaceWord(int indexInNew) {
+		return Words.IsWhiteSpace(newWords.getText().charAt(newWords.start(indexInNew)));
+	}
+
+	/**
+	 * @return the word holding position, which is within the text.
+	 */
+	private static int WordAt(Words words, int position) {
+		int low = 0, high = words.size() - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (words.start(middle) <= position) {
+				low = middle;
+			}
+			else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the first word starting at or after position, size if none.
+	 */
+	private static int FirstAtOrAfter(Words words, int position) {
+		int low = 0, high = words.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (words.start(middle) < position) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return diff of the current texts, not null.
+	 */
+	public String build() {
+		StringBuilder content = new StringBuilder();
+		try {
+			this.build(content);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return content.toString();
+	}
+
+	/**
+	 * Writes the diff of the current texts to out. Nothing is flushed or
+	 * closed.
+	 * @throws IOException if out does.
+	 */
+	public void build(Appendable out) throws IOException {
+		DiffRenderer.HTML.render(this.Operations(), out);
+	}
+
+	/**
+	 * @return the operations that turn the old text into the current new text,
+	 *         not null.
+	 */
+	public EditScript editScript() {
+		return this.Operations().detach();
+	}
+
+	private EditScript Operations() {
+		EditScript.fromMatches(matches, oldDocument.size(), newWords.size(), operations);
+		operations.setWords(oldDocument.words(), newWords);
+		return operations;
+	}
+
+}
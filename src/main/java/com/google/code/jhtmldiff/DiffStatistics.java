@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import com.google.code.jhtmldiff.Diff.Action;
+
+/**
+ * What one diff did and how long each phase took.
+ * <p>
+ * The phases are tokenizing (splitting both texts into words and interning
+ * them), matching (indexing, finding the matching blocks and deriving the
+ * operations) and rendering (writing the output).
+ */
+public final class DiffStatistics {
+
+	private static final Action[] ACTIONS = Action.values();
+
+	private final long tokenizeNanos, matchNanos, renderNanos;
+	private final int oldLength, newLength;
+	private final int oldTokens, newTokens;
+	private final int matchingBlocks;
+	private final int[] operations;
+	private final long outputLength;
+	private final int maxDepth;
+	private final boolean degraded;
+
+	DiffStatistics(long tokenizeNanos, long matchNanos, long renderNanos, int oldLength, int newLength,
+			int oldTokens, int newTokens, int matchingBlocks, int[] operations, long outputLength, int maxDepth,
+			boolean degraded) {
+		this.tokenizeNanos = tokenizeNanos;
+		this.matchNanos = matchNanos;
+		this.renderNanos = renderNanos;
+		this.oldLength = oldLength;
+		this.newLength = newLength;
+		this.oldTokens = oldTokens;
+		this.newTokens = newTokens;
+		this.matchingBlocks = matchingBlocks;
+		this.operations = operations;
+		this.outputLength = outputLength;
+		this.maxDepth = maxDepth;
+		this.degraded = degraded;
+	}
+
+	public long getTokenizeNanos() {
+		return tokenizeNanos;
+	}
+
+	public long getMatchNanos() {
+		return matchNanos;
+	}
+
+	public long getRenderNanos() {
+		return renderNanos;
+	}
+
+	public long getTotalNanos() {
+		return tokenizeNanos + matchNanos + renderNanos;
+	}
+
+	/**
+	 * @return characters in the old text.
+	 */
+	public int getOldLength() {
+		return oldLength;
+	}
+
+	/**
+	 * @return characters in the new text.
+	 */
+	public int getNewLength() {
+		return newLength;
+	}
+
+	/**
+	 * @return words, tags and whitespace runs in the old text.
+	 */
+	public int getOldTokens() {
+		return oldTokens;
+	}
+
+	/**
+	 * @return words, tags and whitespace runs in the new text.
+	 */
+	public int getNewTokens() {
+		return newTokens;
+	}
+
+	public int getMatchingBlocks() {
+		return matchingBlocks;
+	}
+
+	/**
+	 * @return number of operations with the given action.
+	 */
+	public int getOperations(Action action) {
+		return operations[action.ordinal()];
+	}
+
+	/**
+	 * @return characters written.
+	 */
+	public long getOutputLength() {
+		return outputLength;
+	}
+
+	/**
+	 * @return how deeply the algorithm nested its search, 1 for a single range,
+	 *         0 if it did not search at all.
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * @return whether the diff ran out of its budget and was finished coarsely.
+	 * @see EditScript#isDegraded()
+	 */
+	public boolean isDegraded() {
+		return degraded;
+	}
+
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		s.append("DiffStatistics[tokenizeNanos=").append(tokenizeNanos);
+		s.append(", matchNanos=").append(matchNanos);
+		s.append(", renderNanos=").append(renderNanos);
+		s.append(", oldLength=").append(oldLength);
+		s.append(", newLength=").append(newLength);
+		s.append(", oldTokens=").append(oldTokens);
+		s.append(", newTokens=").append(newTokens);
+		s.append(", matchingBlocks=").append(matchingBlocks);
+		for (Action action : ACTIONS) {
+			s.append(", ").append(action).append('=').append(operations[action.ordinal()]);
+		}
+		s.append(", outputLength=").append(outputLength);
+		s.append(", maxDepth=").append(maxDepth);
+		s.append(", degraded=").append(degraded);
+		return s.append(']').toString();
+	}
+
+}
@@ -0,0 +1,244 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import java.util.Arrays;
+
+import com.google.code.jhtmldiff.Diff.Action;
+
+/**
+ * The operations that turn the old words into the new words, packed five
+ * <code>int</code>s per operation: action, start and end in old, start and end
+ * in new.
+ * <p>
+ * Operations cover both texts in order with no gaps. Each gives its range as
+ * word indexes and as character offsets into the texts, so callers that only
+ * need to know where the changes are can skip rendering, or pass the script to
+ * any {@link DiffRenderer}.
+ */
+public final class EditScript {
+
+	private static final int FIELDS = 5;
+	private static final Action[] ACTIONS = Action.values();
+
+	private int[] operations;
+	private int size;
+	private Words oldWords, newWords;
+	private boolean degraded;
+
+	EditScript() {
+		this.operations = new int[16 * FIELDS];
+	}
+
+	private EditScript(int[] operations, int size, Words oldWords, Words newWords) {
+		this.operations = operations;
+		this.size = size;
+		this.oldWords = oldWords;
+		this.newWords = newWords;
+	}
+
+	/**
+	 * @param oldWords the words the operations index into, in old.
+	 * @param newWords the words the operations index into, in new.
+	 */
+	void setWords(Words oldWords, Words newWords) {
+		this.oldWords = oldWords;
+		this.newWords = newWords;
+	}
+
+	/**
+	 * @return a copy that stays valid after the context this script and its
+	 *         words came from is reused.
+	 */
+	EditScript detach() {
+		EditScript copy = new EditScript(Arrays.copyOf(operations, size * FIELDS), size, oldWords.copy(),
+				newWords.copy());
+		copy.degraded = degraded;
+		return copy;
+	}
+
+	void setDegraded(boolean degraded) {
+		this.degraded = degraded;
+	}
+
+	/**
+	 * @return whether the diff ran out of its time or work budget, so that some
+	 *         changed stretches are replaced as a whole rather than word by
+	 *         word. The script is valid either way.
+	 * @see DiffEngine#withTimeLimit(long, java.util.concurrent.TimeUnit)
+	 */
+	public boolean isDegraded() {
+		return degraded;
+	}
+
+	Words oldWords() {
+		return oldWords;
+	}
+
+	Words newWords() {
+		return newWords;
+	}
+
+	public String getOldText() {
+		return oldWords.getText();
+	}
+
+	public String getNewText() {
+		return newWords.getText();
+	}
+
+	void add(Action action, int startInOld, int endInOld, int startInNew, int endInNew) {
+		int i = size * FIELDS;
+		if (i == operations.length) {
+			int[] grown = new int[operations.length * 2];
+			System.arraycopy(operations, 0, grown, 0, operations.length);
+			operations = grown;
+		}
+		operations[i] = action.ordinal();
+		operations[i + 1] = startInOld;
+		operations[i + 2] = endInOld;
+		operations[i + 3] = startInNew;
+		operations[i + 4] = endInNew;
+		size++;
+	}
+
+	/**
+	 * Turns matching blocks, in ascending order, into operations covering both
+	 * word sequences.
+	 */
+	static EditScript fromMatches(Matches matches, int oldSize, int newSize) {
+		return fromMatches(matches, oldSize, newSize, new EditScript());
+	}
+
+	/**
+	 * @param script cleared, then filled with the operations.
+	 */
+	static EditScript fromMatches(Matches matches, int oldSize, int newSize, EditScript script) {
+		script.size = 0;
+		int positionInOld = 0, positionInNew = 0;
+
+		for (int i = 0; i <= matches.size(); i++) {
+			boolean last = i == matches.size();
+			int startInOld = last ? oldSize : matches.startInOld(i);
+			int startInNew = last ? newSize : matches.startInNew(i);
+			int size = last ? 0 : matches.length(i);
+
+			boolean matchStartsAtCurrentPositionInOld = (positionInOld == startInOld);
+			boolean matchStartsAtCurrentPositionInNew = (positionInNew == startInNew);
+
+			Action action = Action.none;
+
+			if (matchStartsAtCurrentPositionInOld == false && matchStartsAtCurrentPositionInNew == false) {
+				action = Action.replace;
+			}
+			else if (matchStartsAtCurrentPositionInOld == true && matchStartsAtCurrentPositionInNew == false) {
+				action = Action.insert;
+			}
+			else if (matchStartsAtCurrentPositionInOld == false && matchStartsAtCurrentPositionInNew == true) {
+				action = Action.delete;
+			}
+			else // This occurs if the first few words are the same in both
+					// versions
+			{
+				action = Action.none;
+			}
+
+			if (action != Action.none) {
+				script.add(action, positionInOld, startInOld, positionInNew, startInNew);
+			}
+
+			if (size != 0) {
+				script.add(Action.equal, startInOld, startInOld + size, startInNew, startInNew + size);
+			}
+
+			positionInOld = startInOld + size;
+			positionInNew = startInNew + size;
+		}
+
+		return script;
+	}
+
+	/**
+	 * @return number of operations the script holds without growing.
+	 */
+	int capacity() {
+		return operations.length / FIELDS;
+	}
+
+	/**
+	 * @return number of operations.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return equal, delete, insert or replace, never none.
+	 */
+	public Action action(int operation) {
+		return ACTIONS[operations[operation * FIELDS]];
+	}
+
+	/**
+	 * @return index of the first old word the operation covers.
+	 */
+	public int startInOld(int operation) {
+		return operations[operation * FIELDS + 1];
+	}
+
+	/**
+	 * @return index past the last old word the operation covers.
+	 */
+	public int endInOld(int operation) {
+		return operations[operation * FIELDS + 2];
+	}
+
+	public int startInNew(int operation) {
+		return operations[operation * FIELDS + 3];
+	}
+
+	public int endInNew(int operation) {
+		return operations[operation * FIELDS + 4];
+	}
+
+	/**
+	 * @return offset in the old text where the operation starts.
+	 */
+	public int charStartInOld(int operation) {
+		return oldWords.start(startInOld(operation));
+	}
+
+	public int charEndInOld(int operation) {
+		return oldWords.start(endInOld(operation));
+	}
+
+	public int charStartInNew(int operation) {
+		return newWords.start(startInNew(operation));
+	}
+
+	public int charEndInNew(int operation) {
+		return newWords.start(endInNew(operation));
+	}
+
+}
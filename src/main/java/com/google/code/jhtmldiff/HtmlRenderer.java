@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import java.io.IOException;
+
+/**
+ * Renders the HTML diff: the new text, with deleted and inserted words wrapped
+ * in &lt;del&gt; and &lt;ins&gt; so that no wrapper spans a tag.
+ */
+final class HtmlRenderer implements DiffRenderer {
+
+	private static final boolean[] specialCaseTags = Words.TagNameTable("strong", "b", "i", "big", "small", "u",
+			"sub", "sup", "strike", "s");
+
+	public void render(EditScript script, Appendable out) throws IOException {
+		for (int i = 0; i < script.size(); i++) {
+			PerformOperation(script, i, out);
+		}
+	}
+
+	private void PerformOperation(EditScript operations, int operation, Appendable out) throws IOException {
+		switch (operations.action(operation)) {
+			case equal:
+				ProcessEqualOperation(operations.newWords(), operations.startInNew(operation),
+						operations.endInNew(operation), out);
+				break;
+			case delete:
+				ProcessDeleteOperation(operations.oldWords(), operations.startInOld(operation),
+						operations.endInOld(operation), "diffdel", out);
+				break;
+			case insert:
+				ProcessInsertOperation(operations.newWords(), operations.startInNew(operation),
+						operations.endInNew(operation), "diffins", out);
+				break;
+			case none:
+				break;
+			case replace:
+				ProcessReplaceOperation(operations, operation, out);
+				break;
+			default:
+				break;
+		}
+	}
+
+	private void ProcessReplaceOperation(EditScript operations, int operation, Appendable out) throws IOException {
+		ProcessDeleteOperation(operations.oldWords(), operations.startInOld(operation), operations.endInOld(operation),
+				"diffmod", out);
+		ProcessInsertOperation(operations.newWords(), operations.startInNew(operation), operations.endInNew(operation),
+				"diffmod", out);
+	}
+
+	private void ProcessInsertOperation(Words newWords, int startInNew, int endInNew, String cssClass, Appendable out)
+			throws IOException {
+		InsertTag("ins", cssClass, newWords, startInNew, endInNew, out);
+	}
+
+	private void ProcessDeleteOperation(Words oldWords, int startInOld, int endInOld, String cssClass, Appendable out)
+			throws IOException {
+		InsertTag("del", cssClass, oldWords, startInOld, endInOld, out);
+	}
+
+	private void ProcessEqualOperation(Words newWords, int startInNew, int endInNew, Appendable out)
+			throws IOException {
+		AppendWords(newWords, startInNew, endInNew, out);
+	}
+
+	// / <summary>
+	// / This method encloses words within a specified tag (ins or del), and
+	// adds this into "content",
+	// / with a twist: if there are words contain tags, it actually creates
+	// multiple ins or del,
+	// / so that they don't include any ins or del. This handles cases like
+	// / old: '<p>a</p>'
+	// / new: '<p>ab</p><p>c</b>'
+	// / diff result: '<p>a<ins>b</ins></p><p><ins>c</ins></p>'
+	// / this still doesn't guarantee valid HTML (hint: think about diffing a
+	// text containing ins or
+	// / del tags), but handles correctly more cases than the earlier version.
+	// /
+	// / P.S.: Spare a thought for people who write HTML browsers. They live in
+	// this ... every day.
+	// / </summary>
+	// / <param name="tag"></param>
+	// / <param name="cssClass"></param>
+	// / <param name="words"></param>
+	private void InsertTag(String tag, String cssClass, Words words, int start, int end, Appendable out)
+			throws IOException {
+		// Words before position have been written.
+		int position = start;
+		while (true) {
+			if (position == end) {
+				break;
+			}
+			int nonTagsEnd = ConsecutiveWordsEnd(words, position, end, false);
+
+			String specialCaseTagInjection = "";
+			boolean specialCaseTagInjectionIsBefore = false;
+
+			if (nonTagsEnd != position) {
+				WrapText(words, position, nonTagsEnd, tag, cssClass, out);
+				position = nonTagsEnd;
+			}
+			else {
+				// Check if strong tag
+				if (IsSpecialCaseTag(words, position, Words.OPENING_TAG)) {
+					specialCaseTagInjection = "<ins class='mod'>";
+					if (tag == "del") {
+						position++;
+					}
+				}
+				else if (IsSpecialCaseTag(words, position, Words.CLOSING_TAG)) {
+					specialCaseTagInjection = "</ins>";
+					specialCaseTagInjectionIsBefore = true;
+					if (tag == "del") {
+						position++;
+					}
+				}
+
+			}
+
+			if (position == end && specialCaseTagInjection.length() == 0) {
+				break;
+			}
+
+			int tagsEnd = ConsecutiveWordsEnd(words, position, end, true);
+			if (specialCaseTagInjectionIsBefore) {
+				out.append(specialCaseTagInjection);
+				AppendWords(words, position, tagsEnd, out);
+			}
+			else {
+				AppendWords(words, position, tagsEnd, out);
+				out.append(specialCaseTagInjection);
+			}
+			position = tagsEnd;
+		}
+	}
+
+	private void WrapText(Words words, int start, int end, String tagName, String cssClass, Appendable out)
+			throws IOException {
+		out.append('<').append(tagName).append(" class=\"").append(cssClass).append("\">");
+		AppendWords(words, start, end, out);
+		out.append("</").append(tagName).append('>');
+	}
+
+	/**
+	 * Consecutive words are contiguous in their text, so they are written as one
+	 * run.
+	 */
+	private void AppendWords(Words words, int start, int end, Appendable out) throws IOException {
+		out.append(words.getText(), words.start(start), words.start(end));
+	}
+
+	/**
+	 * @return the first position from start on whose word is not (tags false)
+	 *         or is (tags true) a tag, or end if there is none.
+	 */
+	private int ConsecutiveWordsEnd(Words words, int start, int end, boolean tags) {
+		int i = start;
+		while (i < end && words.isTag(i) == tags) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Special case tags are formatting tags without attributes, such as
+	 * &lt;strong&gt; or &lt;/strong&gt;.
+	 * @param kind Words.OPENING_TAG or Words.CLOSING_TAG.
+	 */
+	private static boolean IsSpecialCaseTag(Words words, int i, int kind) {
+		return words.kind(i) == kind && words.isBareTag(i) && specialCaseTags[words.tagName(i)];
+	}
+
+}
@@ -0,0 +1,249 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The text of an HTML file, decoded once from its bytes, with the charset it
+ * was decoded with.
+ * <p>
+ * Unless a charset is given, it is taken from a byte order mark, then from a
+ * <code>&lt;meta charset&gt;</code> or <code>http-equiv</code> declaration near
+ * the start, and is UTF-8 otherwise. Line endings and every other character
+ * are kept as they are; only a byte order mark is dropped.
+ */
+public final class HtmlSource {
+
+	/** Files this large are memory-mapped rather than read into a buffer. */
+	static final long MAP_LENGTH = 1 << 20;
+
+	/** How far into the bytes a meta charset declaration is looked for. */
+	private static final int PRESCAN_LENGTH = 1024;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final String text;
+	private final Charset charset;
+
+	private HtmlSource(String text, Charset charset) {
+		this.text = text;
+		this.charset = charset;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * @return charset the text was decoded with, not null.
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Reads a file through a channel sized to the file, mapping it if large.
+	 * @param charset null to detect it.
+	 */
+	public static HtmlSource read(File file, Charset charset) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			long length = channel.size();
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too large: " + length + " bytes");
+			}
+			ByteBuffer bytes;
+			if (length >= MAP_LENGTH) {
+				bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			}
+			else {
+				bytes = ByteBuffer.allocate((int) length);
+				while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+				}
+				bytes.flip();
+			}
+			return decode(bytes, charset);
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * @param charset null to detect it.
+	 */
+	public static HtmlSource read(URL url, Charset charset) throws IOException {
+		InputStream in = url.openStream();
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				bytes.write(buffer, 0, read);
+			}
+			return decode(ByteBuffer.wrap(bytes.toByteArray()), charset);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Decodes bytes in one pass into a buffer sized for them. Malformed input
+	 * is replaced rather than rejected.
+	 * @param charset null to detect it.
+	 */
+	public static HtmlSource decode(ByteBuffer bytes, Charset charset) throws CharacterCodingException {
+		Charset bom = ByteOrderMark(bytes);
+		if (charset == null) {
+			// A byte order mark overrides any declaration, but not the caller.
+			charset = bom != null ? bom : MetaCharset(bytes);
+		}
+		if (charset == null) {
+			charset = UTF_8;
+		}
+		if (bom != null && bom.equals(charset)) {
+			// Under any other charset given, the same bytes are text.
+			bytes.position(bytes.position() + (bom == UTF_8 ? 3 : 2));
+		}
+		CharsetDecoder decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		CharBuffer chars = CharBuffer.allocate((int) Math.ceil(bytes.remaining() * (double) decoder.maxCharsPerByte()));
+		while (true) {
+			CoderResult result = decoder.decode(bytes, chars, true);
+			if (result.isUnderflow()) {
+				result = decoder.flush(chars);
+			}
+			if (result.isUnderflow()) {
+				break;
+			}
+			if (result.isOverflow()) {
+				// Only a decoder that understates maxCharsPerByte gets here.
+				chars = Grow(chars);
+			}
+			else {
+				result.throwException();
+			}
+		}
+		chars.flip();
+		return new HtmlSource(chars.toString(), charset);
+	}
+
+	private static CharBuffer Grow(CharBuffer chars) {
+		CharBuffer grown = CharBuffer.allocate(chars.capacity() * 2 + 16);
+		chars.flip();
+		grown.put(chars);
+		return grown;
+	}
+
+	private static Charset ByteOrderMark(ByteBuffer bytes) {
+		int p = bytes.position();
+		int remaining = bytes.remaining();
+		if (remaining >= 3 && (bytes.get(p) & 0xff) == 0xef && (bytes.get(p + 1) & 0xff) == 0xbb
+				&& (bytes.get(p + 2) & 0xff) == 0xbf) {
+			return UTF_8;
+		}
+		if (remaining >= 2 && (bytes.get(p) & 0xff) == 0xfe && (bytes.get(p + 1) & 0xff) == 0xff) {
+			return Charset.forName("UTF-16BE");
+		}
+		if (remaining >= 2 && (bytes.get(p) & 0xff) == 0xff && (bytes.get(p + 1) & 0xff) == 0xfe) {
+			return Charset.forName("UTF-16LE");
+		}
+		return null;
+	}
+
+	/**
+	 * Looks for <code>charset=</code> inside a meta tag near the start, as
+	 * ASCII.
+	 * @return the declared charset, null if none is declared or it is unknown.
+	 */
+	private static Charset MetaCharset(ByteBuffer bytes) {
+		int start = bytes.position();
+		int end = start + Math.min(bytes.remaining(), PRESCAN_LENGTH);
+		StringBuilder head = new StringBuilder(end - start);
+		for (int i = start; i < end; i++) {
+			head.append(Character.toLowerCase((char) (bytes.get(i) & 0xff)));
+		}
+
+		for (int meta = head.indexOf("<meta"); meta >= 0; meta = head.indexOf("<meta", meta + 1)) {
+			int close = head.indexOf(">", meta);
+			if (close < 0) {
+				break;
+			}
+			int declaration = head.indexOf("charset", meta);
+			if (declaration < 0 || declaration > close) {
+				continue;
+			}
+			int i = declaration + "charset".length();
+			while (i < close && (head.charAt(i) == '=' || head.charAt(i) == '"' || head.charAt(i) == '\''
+					|| Words.IsWhiteSpace(head.charAt(i)))) {
+				i++;
+			}
+			int nameStart = i;
+			while (i < close && IsCharsetNameChar(head.charAt(i))) {
+				i++;
+			}
+			Charset charset = Lookup(head.substring(nameStart, i));
+			if (charset != null) {
+				// A document that declares UTF-16 in ASCII cannot be UTF-16.
+				return charset.name().startsWith("UTF-16") ? UTF_8 : charset;
+			}
+		}
+		return null;
+	}
+
+	private static boolean IsCharsetNameChar(char c) {
+		return c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '-' || c == '_' || c == '.' || c == ':';
+	}
+
+	private static Charset Lookup(String name) {
+		if (name.length() == 0) {
+			return null;
+		}
+		try {
+			return Charset.forName(name);
+		} catch (IllegalCharsetNameException e) {
+			return null;
+		} catch (UnsupportedCharsetException e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import java.io.IOException;
+
+/**
+ * Renders only where the changes are, as one line of JSON:
+ * 
+ * <pre>
+ * {"oldLength":12,"newLength":14,"operations":[
+ *   {"action":"equal","old":[0,4],"new":[0,4],"oldChars":[0,7],"newChars":[0,7]},
+ *   {"action":"replace","old":[4,5],"new":[4,5],"oldChars":[7,12],"newChars":[7,14]}]}
+ * </pre>
+ * 
+ * Lengths are in characters; <code>old</code> and <code>new</code> are word
+ * ranges and <code>oldChars</code> and <code>newChars</code> character ranges,
+ * each start inclusive and end exclusive.
+ */
+final class JsonRenderer implements DiffRenderer {
+
+	public void render(EditScript script, Appendable out) throws IOException {
+		out.append("{\"oldLength\":").append(Integer.toString(script.getOldText().length()));
+		out.append(",\"newLength\":").append(Integer.toString(script.getNewText().length()));
+		out.append(",\"operations\":[");
+		for (int i = 0; i < script.size(); i++) {
+			if (i > 0) {
+				out.append(',');
+			}
+			out.append("{\"action\":\"").append(script.action(i).name()).append('"');
+			AppendRange(out, "old", script.startInOld(i), script.endInOld(i));
+			AppendRange(out, "new", script.startInNew(i), script.endInNew(i));
+			AppendRange(out, "oldChars", script.charStartInOld(i), script.charEndInOld(i));
+			AppendRange(out, "newChars", script.charStartInNew(i), script.charEndInNew(i));
+			out.append('}');
+		}
+		out.append("]}");
+	}
+
+	private static void AppendRange(Appendable out, String name, int start, int end) throws IOException {
+		out.append(",\"").append(name).append("\":[").append(Integer.toString(start)).append(',')
+				.append(Integer.toString(end)).append(']');
+	}
+
+}
@@ -0,0 +1,418 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * @see DiffAlgorithm#LONGEST_MATCH
+ */
+final class LongestMatchAlgorithm implements DiffAlgorithm {
+
+	/**
+	 * Ranges with at least this many words, old and new together, are searched
+	 * as fork-join tasks when the context has a pool.
+	 */
+	static final int PARALLEL_THRESHOLD = 8192;
+
+	public void findMatchingBlocks(DiffContext context, int startInOld, int endInOld, int startInNew, int endInNew,
+			Matches matchingBlocks) {
+		ForkJoinPool pool = context.getPool();
+		if (pool == null || (endInOld - startInOld) + (endInNew - startInNew) < PARALLEL_THRESHOLD) {
+			Search search = new Search(context, startInNew, endInNew);
+			search.FindMatchingBlocks(startInOld, endInOld, startInNew, endInNew, matchingBlocks);
+			context.reportDepth(search.maxDepth);
+			return;
+		}
+		// Built once up front, tasks only read it.
+		context.getNewWordIndex();
+		SearchTask task = new SearchTask(context, startInOld, endInOld, startInNew, endInNew, 1);
+		if (ForkJoinTask.getPool() == pool) {
+			task.invoke();
+		}
+		else {
+			pool.invoke(task);
+		}
+		task.addTo(matchingBlocks);
+		context.reportDepth(task.maxDepth);
+	}
+
+	/**
+	 * Searches a range the same way as {@link Search}, but forks the side of
+	 * each match that is large enough and smaller than the other, and carries on
+	 * with the larger side itself. Forked tasks thus at most halve their
+	 * parent's range, which keeps nesting shallow however lopsided the matches are.
+	 * <p>
+	 * Finding a range's longest match does not depend on any other range, so
+	 * the blocks come out exactly as the sequential search finds them.
+	 */
+	private static final class SearchTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient DiffContext context;
+		private final int startInOld, endInOld, startInNew, endInNew;
+		/** Depth of this task's range, as the sequential search would count it. */
+		private final int depth;
+		/** Deepest range searched by this task or the ones it forked. */
+		private int maxDepth;
+		/** Matches and tasks in ascending order, before the last range searched. */
+		private final List<Object> before = new ArrayList<Object>();
+		/** Matches and tasks in descending order, after the last range searched. */
+		private final List<Object> after = new ArrayList<Object>();
+
+		SearchTask(DiffContext context, int startInOld, int endInOld, int startInNew, int endInNew, int depth) {
+			this.context = context;
+			this.depth = depth;
+			this.startInOld = startInOld;
+			this.endInOld = endInOld;
+			this.startInNew = startInNew;
+			this.endInNew = endInNew;
+		}
+
+		protected void compute() {
+			List<SearchTask> forked = new ArrayList<SearchTask>();
+			int startInOld = this.startInOld, endInOld = this.endInOld;
+			int startInNew = this.startInNew, endInNew = this.endInNew;
+			Search search = new Search(this.context, startInNew, endInNew, true);
+			int depth = this.depth;
+
+			while (IsLarge(startInOld, endInOld, startInNew, endInNew)) {
+				int size = search.FindMatch(startInOld, endInOld, startInNew, endInNew);
+				if (size == 0) {
+					break;
+				}
+				int matchInOld = search.matchStartInOld;
+				int matchInNew = search.matchStartInNew;
+				Matches match = new Matches();
+				match.add(matchInOld, matchInNew, size);
+
+				if ((matchInOld - startInOld) + (matchInNew - startInNew) >= (endInOld - matchInOld - size)
+						+ (endInNew - matchInNew - size)) {
+					// Carry on left of the match.
+					this.after.add(this.Side(matchInOld + size, endInOld, matchInNew + size, endInNew, depth + 1,
+							forked));
+					this.after.add(match);
+					endInOld = matchInOld;
+					endInNew = matchInNew;
+				}
+				else {
+					this.before.add(this.Side(startInOld, matchInOld, startInNew, matchInNew, depth + 1, forked));
+					this.before.add(match);
+					startInOld = matchInOld + size;
+					startInNew = matchInNew + size;
+				}
+				depth++;
+			}
+			this.before.add(this.Side(startInOld, endInOld, startInNew, endInNew, depth, null));
+
+			for (int i = forked.size() - 1; i >= 0; i--) {
+				SearchTask task = forked.get(i);
+				task.join();
+				this.maxDepth = Math.max(this.maxDepth, task.maxDepth);
+			}
+		}
+
+		/**
+		 * @param forked receives the task if the range is forked, null to search
+		 *        it here regardless.
+		 * @return the range's matches, or the task searching it.
+		 */
+		private Object Side(int startInOld, int endInOld, int startInNew, int endInNew, int depth,
+				List<SearchTask> forked) {
+			this.maxDepth = Math.max(this.maxDepth, depth);
+			if (forked != null && IsLarge(startInOld, endInOld, startInNew, endInNew)) {
+				SearchTask task = new SearchTask(this.context, startInOld, endInOld, startInNew, endInNew, depth);
+				task.fork();
+				forked.add(task);
+				return task;
+			}
+			Matches matches = new Matches();
+			if (startInOld < endInOld && startInNew < endInNew) {
+				Search search = new Search(this.context, startInNew, endInNew, true);
+				search.FindMatchingBlocks(startInOld, endInOld, startInNew, endInNew, matches);
+				this.maxDepth = Math.max(this.maxDepth, depth - 1 + search.maxDepth);
+			}
+			return matches;
+		}
+
+		private static boolean IsLarge(int startInOld, int endInOld, int startInNew, int endInNew) {
+			return startInOld < endInOld && startInNew < endInNew
+					&& (endInOld - startInOld) + (endInNew - startInNew) >= PARALLEL_THRESHOLD;
+		}
+
+		/**
+		 * Adds the blocks found, in order, once the task is done.
+		 */
+		void addTo(Matches matchingBlocks) {
+			for (Object part : this.before) {
+				AddPart(part, matchingBlocks);
+			}
+			for (int i = this.after.size() - 1; i >= 0; i--) {
+				AddPart(this.after.get(i), matchingBlocks);
+			}
+		}
+
+		private static void AddPart(Object part, Matches matchingBlocks) {
+			if (part instanceof SearchTask) {
+				((SearchTask) part).addTo(matchingBlocks);
+				return;
+			}
+			Matches matches = (Matches) part;
+			for (int i = 0; i < matches.size(); i++) {
+				matchingBlocks.add(matches.startInOld(i), matches.startInNew(i), matches.length(i));
+			}
+		}
+	}
+
+	private static final class Search {
+
+		private static final int FRAME = 5;
+		/** Old words compared between checks of the budget. */
+		private static final int BUDGET_ROWS = 1024;
+
+		private final DiffContext context;
+		private final int[] oldWords;
+		private final WordIndex wordIndices;
+		/** Position in new of the first entry in the match arrays, less one. */
+		private final int base;
+		private int[] matchLengthAt, newMatchLengthAt;
+		private int[] matchRowAt, newMatchRowAt;
+		private int row;
+		private int matchStartInOld, matchStartInNew;
+		private int[] pending = new int[16 * FRAME];
+		private int pendingSize;
+		/** Deepest range searched, counting the first as 1. */
+		private int maxDepth;
+
+		/**
+		 * Search within [startInNew, endInNew) using the context's scratch space.
+		 */
+		Search(DiffContext context, int startInNew, int endInNew) {
+			this(context, startInNew, endInNew, false);
+		}
+
+		/**
+		 * @param own whether to allocate scratch space rather than share the
+		 *        context's, so searches can run at the same time.
+		 */
+		Search(DiffContext context, int startInNew, int endInNew, boolean own) {
+			this.context = context;
+			this.oldWords = context.getOldWordIds();
+			this.wordIndices = context.getNewWordIndex();
+			this.base = startInNew;
+			int size = endInNew - startInNew + 1;
+			if (own) {
+				this.matchLengthAt = new int[size];
+				this.newMatchLengthAt = new int[size];
+				this.matchRowAt = new int[size];
+				this.newMatchRowAt = new int[size];
+			}
+			else {
+				this.matchLengthAt = context.getBuffer(0, size);
+				this.newMatchLengthAt = context.getBuffer(1, size);
+				this.matchRowAt = context.getBuffer(2, size);
+				this.newMatchRowAt = context.getBuffer(3, size);
+			}
+		}
+
+		/**
+		 * Searches either side of each match found, left side first, so blocks
+		 * come out in ascending order. Ranges still to search and matches
+		 * waiting for their left side are kept on an explicit stack rather than
+		 * the call stack, so deeply nested searches cannot overflow it.
+		 */
+		void FindMatchingBlocks(int startInOld, int endInOld, int startInNew, int endInNew, Matches matchingBlocks) {
+			this.push(startInOld, endInOld, startInNew, endInNew, 1);
+
+			while (this.pendingSize > 0) {
+				int top = this.pendingSize -= FRAME;
+				startInOld = this.pending[top];
+				endInOld = this.pending[top + 1];
+				startInNew = this.pending[top + 2];
+				endInNew = this.pending[top + 3];
+				int depth = this.pending[top + 4];
+
+				if (startInOld < 0) {
+					matchingBlocks.add(~startInOld, startInNew, endInOld);
+					continue;
+				}
+				if (depth > this.maxDepth) {
+					this.maxDepth = depth;
+				}
+
+				int size = this.FindMatch(startInOld, endInOld, startInNew, endInNew);
+
+				if (size != 0) {
+					int matchInOld = this.matchStartInOld;
+					int matchInNew = this.matchStartInNew;
+
+					if (matchInOld + size < endInOld && matchInNew + size < endInNew) {
+						this.push(matchInOld + size, endInOld, matchInNew + size, endInNew, depth + 1);
+					}
+
+					// A match is marked by its complemented start in old, with its size in place of the end.
+					this.push(~matchInOld, size, matchInNew, 0, 0);
+
+					if (startInOld < matchInOld && startInNew < matchInNew) {
+						this.push(startInOld, matchInOld, startInNew, matchInNew, depth + 1);
+					}
+				}
+			}
+		}
+
+		private void push(int a, int b, int c, int d, int depth) {
+			if (this.pendingSize == this.pending.length) {
+				int[] grown = new int[this.pending.length * 2];
+				System.arraycopy(this.pending, 0, grown, 0, this.pending.length);
+				this.pending = grown;
+			}
+			this.pending[this.pendingSize++] = a;
+			this.pending[this.pendingSize++] = b;
+			this.pending[this.pendingSize++] = c;
+			this.pending[this.pendingSize++] = d;
+			this.pending[this.pendingSize++] = depth;
+		}
+
+		/**
+		 * Finds the longest run of equal words in the given ranges.
+		 * <p>
+		 * Match lengths for the previous and current old word are kept in two
+		 * reused arrays indexed by position in new. Each row stamps the entries it
+		 * writes, so neither array is ever cleared: an entry only counts if it
+		 * carries the previous row's stamp.
+		 * 
+		 * @return size of the match, 0 if none or if the budget ran out; the start
+		 *         of the match is left in matchStartInOld and matchStartInNew.
+		 */
+		private int FindMatch(int startInOld, int endInOld, int startInNew, int endInNew) {
+			if (!this.context.spend(0)) {
+				return 0;
+			}
+			DiffContext context = this.context;
+			long work = 0;
+			int rowsToCheck = BUDGET_ROWS;
+			int bestMatchInOld = startInOld;
+			int bestMatchInNew = startInNew;
+			int bestMatchSize = 0;
+			int base = this.base;
+
+			if (this.row > Integer.MAX_VALUE - (endInOld - startInOld) - 1) {
+				Arrays.fill(this.matchRowAt, 0);
+				Arrays.fill(this.newMatchRowAt, 0);
+				this.row = 0;
+			}
+
+			int[] matchLengthAt = this.matchLengthAt, newMatchLengthAt = this.newMatchLengthAt;
+			int[] matchRowAt = this.matchRowAt, newMatchRowAt = this.newMatchRowAt;
+			// A fresh stamp, so nothing written by an earlier search counts.
+			int previousRow = ++this.row;
+
+			for (int indexInOld = startInOld; indexInOld < endInOld; indexInOld++) {
+				int currentRow = ++this.row;
+
+				int index = this.oldWords[indexInOld];
+
+				int end = this.wordIndices.end(index);
+				int first = this.FirstAtOrAfter(index, startInNew, end);
+				int i = first;
+				for (; i < end; i++) {
+					int indexInNew = this.wordIndices.position(i);
+					if (indexInNew >= endInNew) {
+						break;
+					}
+
+					// Entries are shifted by one so the entry before startInNew is
+					// never out of range.
+					int at = indexInNew - base;
+					int newMatchLength = (matchRowAt[at] == previousRow ? matchLengthAt[at] : 0) + 1;
+					newMatchLengthAt[at + 1] = newMatchLength;
+					newMatchRowAt[at + 1] = currentRow;
+
+					if (newMatchLength > bestMatchSize) {
+						bestMatchInOld = indexInOld - newMatchLength + 1;
+						bestMatchInNew = indexInNew - newMatchLength + 1;
+						bestMatchSize = newMatchLength;
+					}
+				}
+
+				work += i - first + 1;
+				if (--rowsToCheck == 0) {
+					if (!context.spend(work)) {
+						return 0;
+					}
+					work = 0;
+					rowsToCheck = BUDGET_ROWS;
+				}
+
+				int[] swap = matchLengthAt;
+				matchLengthAt = newMatchLengthAt;
+				newMatchLengthAt = swap;
+				swap = matchRowAt;
+				matchRowAt = newMatchRowAt;
+				newMatchRowAt = swap;
+				previousRow = currentRow;
+			}
+
+			this.matchLengthAt = matchLengthAt;
+			this.newMatchLengthAt = newMatchLengthAt;
+			this.matchRowAt = matchRowAt;
+			this.newMatchRowAt = newMatchRowAt;
+
+			context.spend(work);
+			this.matchStartInOld = bestMatchInOld;
+			this.matchStartInNew = bestMatchInNew;
+			return bestMatchSize;
+		}
+
+		/**
+		 * Binary searches the positions of a word, so a search over a small
+		 * range of a large document skips the positions before the range
+		 * instead of walking them.
+		 * @return index of the word's first position at or after startInNew, end
+		 *         if there is none.
+		 */
+		private int FirstAtOrAfter(int index, int startInNew, int end) {
+			int low = this.wordIndices.first(index);
+			int high = end;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (this.wordIndices.position(middle) < startInNew) {
+					low = middle + 1;
+				}
+				else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+	}
+
+}
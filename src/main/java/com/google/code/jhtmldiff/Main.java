@@ -24,32 +24,70 @@
 package com.google.code.jhtmldiff;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
 
 
 public class Main {
 	
+	/**
+	 * <code>[--charset name] old new</code>, <code>[--charset name] --batch
+	 * manifest [threads]</code> or <code>--server [port] [threads]</code>.
+	 * Without --charset each file's charset is detected, and the diff is
+	 * written in the new file's charset.
+	 */
 	public static void main(String[] args) {
-		String oldUri = args[0];
-		String newUri = args[1];
-		String oldText;
-		String newText;
+		Charset charset = null;
+		if (args.length > 1 && args[0].equals("--charset")) {
+			charset = Charset.forName(args[1]);
+			args = Arrays.copyOfRange(args, 2, args.length);
+		}
+		if (args.length > 0 && args[0].equals("--batch")) {
+			batch(args, charset);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("--server")) {
+			server(args);
+			return;
+		}
+		HtmlSource oldSource;
+		HtmlSource newSource;
 		try {
-			oldText = getString(oldUri);
-			newText = getString(newUri);
+			oldSource = getSource(new URI(args[0]), charset);
+			newSource = getSource(new URI(args[1]), charset);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		} catch (URISyntaxException e) {
 			throw new RuntimeException(e);
 		}
-		String results = new Diff(oldText, newText).build();
-		System.out.print(results);
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out, newSource.getCharset()));
+		try {
+			new Diff(oldSource.getText(), newSource.getText()).build(out);
+			out.flush();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
 	}
 	
 	public static String getString(String path) throws IOException, URISyntaxException {
@@ -57,22 +95,33 @@ public class Main {
 	}
 	
 	public static String getString(URI uri) throws IOException {
-		InputStream is = null;
+		return getSource(uri, null).getText();
+	}
+
+	/**
+	 * Reads a file, or a URL when the URI has a scheme.
+	 * @param charset null to detect it.
+	 */
+	public static HtmlSource getSource(URI uri, Charset charset) throws IOException {
+		if (uri.getScheme() != null) {
+			return HtmlSource.read(uri.toURL(), charset);
+		}
+		return HtmlSource.read(new File(uri.toString()), charset);
+	}
+
+	/**
+	 * Reads the stream to the end, decodes it with a detected charset and closes
+	 * it.
+	 */
+	public static String getString(InputStream is) throws IOException {
 		try {
-			
-			if (uri.getScheme() != null) {
-				URL url = uri.toURL();
-				is = url.openStream();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(is.available(), 8192));
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = is.read(buffer)) >= 0) {
+				bytes.write(buffer, 0, read);
 			}
-			else {
-				is = new FileInputStream(uri.toString());
-			}
-			BufferedReader in = new BufferedReader(new InputStreamReader(is));
-			String inputLine;
-			StringBuilder sb = new StringBuilder();
-			while ((inputLine = in.readLine()) != null)
-				sb.append(inputLine + "\n");
-			return sb.toString();
+			return HtmlSource.decode(ByteBuffer.wrap(bytes.toByteArray()), null).getText();
 		}
 		finally {
 			try {
@@ -82,6 +131,173 @@ public class Main {
 		}
 	}
 
-	
+	/**
+	 * <code>--batch manifest [threads]</code>: diffs every pair listed in the
+	 * manifest on all cores. The manifest is UTF-8, whatever --charset says
+	 * about the files it lists. Each line holds the old, new and output paths
+	 * separated by whitespace; relative paths are against the manifest's
+	 * directory, and blank lines or lines starting with # are skipped.
+	 */
+	static void batch(String[] args, Charset charset) {
+		File manifest = new File(args[1]);
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		final AtomicInteger failures = new AtomicInteger();
+		BufferedReader in = null;
+		try {
+			in = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), Charset.forName("UTF-8")));
+			new DiffBatch(DiffEngine.DEFAULT, pool).diff(new ManifestIterator(in, manifest.getAbsoluteFile()
+					.getParentFile(), charset), new DiffBatch.Callback<FilePair>() {
+
+				public void completed(int index, FilePair pair, String diff) throws IOException {
+					Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(pair.out),
+							pair.newCharset));
+					try {
+						out.write(diff);
+					}
+					finally {
+						out.close();
+					}
+				}
+
+				public void failed(int index, FilePair pair, Throwable e) {
+					failures.incrementAndGet();
+					System.err.println(pair.out + ": " + e);
+				}
+			});
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		finally {
+			pool.shutdown();
+			try {
+				if (in != null) in.close();
+			} catch (Exception e) {
+			}
+		}
+		if (failures.get() > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * <code>--server [port] [threads]</code>: serves diffs on localhost until
+	 * the JVM is stopped, 8080 and all cores by default.
+	 * @see DiffServer
+	 */
+	static void server(String[] args) {
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		DiffMetrics metrics = new DiffMetrics();
+		try {
+			metrics.register("server");
+		} catch (JMException e) {
+			System.err.println("metrics not registered: " + e);
+		}
+		final DiffServer server;
+		try {
+			server = new DiffServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), DiffEngine.DEFAULT,
+					threads, metrics);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+
+			public void run() {
+				server.stop(1);
+			}
+		});
+		server.start();
+		System.err.println("serving diffs on http://" + server.getAddress().getHostString() + ":"
+				+ server.getAddress().getPort() + "/diff");
+	}
+
+	static final class FilePair implements DiffBatch.Pair {
+
+		final File oldFile, newFile, out;
+		final Charset charset;
+		/** Charset of the new file once read, which the output is written in. */
+		volatile Charset newCharset;
+
+		FilePair(File oldFile, File newFile, File out, Charset charset) {
+			this.oldFile = oldFile;
+			this.newFile = newFile;
+			this.out = out;
+			this.charset = charset;
+		}
+
+		public String getOldText() throws IOException {
+			return HtmlSource.read(oldFile, charset).getText();
+		}
+
+		public String getNewText() throws IOException {
+			HtmlSource source = HtmlSource.read(newFile, charset);
+			newCharset = source.getCharset();
+			return source.getText();
+		}
+	}
+
+	/**
+	 * Reads the manifest a line at a time as pairs are asked for.
+	 */
+	static final class ManifestIterator implements Iterator<FilePair> {
+
+		private final BufferedReader in;
+		private final File directory;
+		private final Charset charset;
+		private FilePair next;
+		private int lineNumber;
+
+		ManifestIterator(BufferedReader in, File directory, Charset charset) {
+			this.in = in;
+			this.directory = directory;
+			this.charset = charset;
+		}
+
+		public boolean hasNext() {
+			if (next != null) {
+				return true;
+			}
+			try {
+				String line;
+				while ((line = in.readLine()) != null) {
+					lineNumber++;
+					line = line.trim();
+					if (line.length() == 0 || line.startsWith("#")) {
+						continue;
+					}
+					String[] paths = line.split("\\s+");
+					if (paths.length != 3) {
+						throw new IllegalArgumentException("line " + lineNumber + ": expected old, new and output paths");
+					}
+					next = new FilePair(resolve(paths[0]), resolve(paths[1]), resolve(paths[2]), charset);
+					return true;
+				}
+				return false;
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		public FilePair next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			FilePair pair = next;
+			next = null;
+			return pair;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private File resolve(String path) {
+			File file = new File(path);
+			return file.isAbsolute() ? file : new File(directory, path);
+		}
+	}
 
 }
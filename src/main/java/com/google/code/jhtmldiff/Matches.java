@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+/**
+ * Matching blocks packed three <code>int</code>s per block: start in old,
+ * start in new and size.
+ * <p>
+ * A block that starts where the previous one ends is merged into it.
+ */
+public final class Matches {
+
+	private static final int FIELDS = 3;
+
+	private int[] blocks;
+	private int size;
+
+	Matches() {
+		this.blocks = new int[16 * FIELDS];
+	}
+
+	public void add(int startInOld, int startInNew, int size) {
+		if (this.size > 0) {
+			int last = (this.size - 1) * FIELDS;
+			int lastSize = blocks[last + 2];
+			if (blocks[last] + lastSize == startInOld && blocks[last + 1] + lastSize == startInNew) {
+				blocks[last + 2] = lastSize + size;
+				return;
+			}
+		}
+		int i = this.size * FIELDS;
+		if (i == blocks.length) {
+			int[] grown = new int[blocks.length * 2];
+			System.arraycopy(blocks, 0, grown, 0, blocks.length);
+			blocks = grown;
+		}
+		blocks[i] = startInOld;
+		blocks[i + 1] = startInNew;
+		blocks[i + 2] = size;
+		this.size++;
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	/**
+	 * @return number of blocks held without growing.
+	 */
+	int capacity() {
+		return blocks.length / FIELDS;
+	}
+
+	/**
+	 * @return number of blocks.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int startInOld(int block) {
+		return blocks[block * FIELDS];
+	}
+
+	public int startInNew(int block) {
+		return blocks[block * FIELDS + 1];
+	}
+
+	public int length(int block) {
+		return blocks[block * FIELDS + 2];
+	}
+
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import java.util.Arrays;
+
+/**
+ * Myers' O(ND) difference algorithm, using the linear space refinement: the
+ * middle snake of the shortest edit path is found by searching forwards and
+ * backwards at once, then both halves are diffed on their own.
+ * 
+ * @see DiffAlgorithm#MYERS
+ */
+final class MyersAlgorithm implements DiffAlgorithm {
+
+	public void findMatchingBlocks(DiffContext context, int startInOld, int endInOld, int startInNew, int endInNew,
+			Matches matchingBlocks) {
+		int maxD = (endInOld - startInOld + endInNew - startInNew + 1) / 2;
+		int[] forward = context.getBuffer(0, 2 * maxD + 2);
+		int[] reverse = context.getBuffer(1, 2 * maxD + 2);
+		Search search = new Search(context, forward, reverse, matchingBlocks);
+		search.diff(startInOld, endInOld, startInNew, endInNew);
+		context.reportDepth(search.maxDepth);
+	}
+
+	private static final class Search {
+
+		private final DiffContext context;
+		private final int[] oldWords, newWords;
+		private final int[] forward, reverse;
+		private final Matches matchingBlocks;
+		private int depth = 1, maxDepth = 1;
+
+		Search(DiffContext context, int[] forward, int[] reverse, Matches matchingBlocks) {
+			this.context = context;
+			this.oldWords = context.getOldWordIds();
+			this.newWords = context.getNewWordIds();
+			this.forward = forward;
+			this.reverse = reverse;
+			this.matchingBlocks = matchingBlocks;
+		}
+
+		void diff(int startInOld, int endInOld, int startInNew, int endInNew) {
+			int prefix = 0;
+			while (startInOld + prefix < endInOld && startInNew + prefix < endInNew
+					&& oldWords[startInOld + prefix] == newWords[startInNew + prefix]) {
+				prefix++;
+			}
+			if (prefix > 0) {
+				matchingBlocks.add(startInOld, startInNew, prefix);
+				startInOld += prefix;
+				startInNew += prefix;
+			}
+
+			int suffix = 0;
+			while (startInOld < endInOld - suffix && startInNew < endInNew - suffix
+					&& oldWords[endInOld - suffix - 1] == newWords[endInNew - suffix - 1]) {
+				suffix++;
+			}
+			endInOld -= suffix;
+			endInNew -= suffix;
+
+			if (startInOld < endInOld && startInNew < endInNew) {
+				bisect(startInOld, endInOld, startInNew, endInNew);
+			}
+
+			if (suffix > 0) {
+				matchingBlocks.add(endInOld, endInNew, suffix);
+			}
+		}
+
+		/**
+		 * Finds the middle snake and diffs the ranges either side of it. Both
+		 * ends of the ranges are known to differ. Once the budget runs out the
+		 * ranges are left unmatched.
+		 */
+		private void bisect(int startInOld, int endInOld, int startInNew, int endInNew) {
+			int n = endInOld - startInOld;
+			int m = endInNew - startInNew;
+			int maxD = (n + m + 1) / 2;
+			int offset = maxD;
+			int length = 2 * maxD + 2;
+			Arrays.fill(forward, 0, length, -1);
+			Arrays.fill(reverse, 0, length, -1);
+			forward[offset + 1] = 0;
+			reverse[offset + 1] = 0;
+
+			int delta = n - m;
+			// With an odd delta the paths meet while extending forwards,
+			// otherwise while extending backwards.
+			boolean front = (delta % 2 != 0);
+			// Diagonals that ran off the edge are trimmed from the search.
+			int k1Start = 0, k1End = 0, k2Start = 0, k2End = 0;
+
+			for (int d = 0; d < maxD; d++) {
+				if (!context.spend(2 * d + 2)) {
+					return;
+				}
+				for (int k1 = -d + k1Start; k1 <= d - k1End; k1 += 2) {
+					int k1Offset = offset + k1;
+					int x1;
+					if (k1 == -d || (k1 != d && forward[k1Offset - 1] < forward[k1Offset + 1])) {
+						x1 = forward[k1Offset + 1];
+					}
+					else {
+						x1 = forward[k1Offset - 1] + 1;
+					}
+					int y1 = x1 - k1;
+					while (x1 < n && y1 < m && oldWords[startInOld + x1] == newWords[startInNew + y1]) {
+						x1++;
+						y1++;
+					}
+					forward[k1Offset] = x1;
+					if (x1 > n) {
+						k1End += 2;
+					}
+					else if (y1 > m) {
+						k1Start += 2;
+					}
+					else if (front) {
+						int k2Offset = offset + delta - k1;
+						if (k2Offset >= 0 && k2Offset < length && reverse[k2Offset] != -1) {
+							if (x1 >= n - reverse[k2Offset]) {
+								split(startInOld, endInOld, startInNew, endInNew, x1, y1);
+								return;
+							}
+						}
+					}
+				}
+
+				for (int k2 = -d + k2Start; k2 <= d - k2End; k2 += 2) {
+					int k2Offset = offset + k2;
+					int x2;
+					if (k2 == -d || (k2 != d && reverse[k2Offset - 1] < reverse[k2Offset + 1])) {
+						x2 = reverse[k2Offset + 1];
+					}
+					else {
+						x2 = reverse[k2Offset - 1] + 1;
+					}
+					int y2 = x2 - k2;
+					while (x2 < n && y2 < m
+							&& oldWords[endInOld - x2 - 1] == newWords[endInNew - y2 - 1]) {
+						x2++;
+						y2++;
+					}
+					reverse[k2Offset] = x2;
+					if (x2 > n) {
+						k2End += 2;
+					}
+					else if (y2 > m) {
+						k2Start += 2;
+					}
+					else if (!front) {
+						int k1Offset = offset + delta - k2;
+						if (k1Offset >= 0 && k1Offset < length && forward[k1Offset] != -1) {
+							int x1 = forward[k1Offset];
+							int y1 = offset + x1 - k1Offset;
+							if (x1 >= n - x2) {
+								split(startInOld, endInOld, startInNew, endInNew, x1, y1);
+								return;
+							}
+						}
+					}
+				}
+			}
+			// Nothing in common.
+		}
+
+		private void split(int startInOld, int endInOld, int startInNew, int endInNew, int x, int y) {
+			if (++depth > maxDepth) {
+				maxDepth = depth;
+			}
+			diff(startInOld, startInOld + x, startInNew, startInNew + y);
+			diff(startInOld + x, endInOld, startInNew + y, endInNew);
+			depth--;
+		}
+
+	}
+
+}
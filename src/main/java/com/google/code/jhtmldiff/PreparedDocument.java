@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+/**
+ * A document tokenized, interned and indexed once, so that it can be diffed
+ * against many others without redoing that work. It can be either side of a
+ * diff.
+ * <p>
+ * Prepared documents are immutable and may be shared by any number of threads.
+ * 
+ * <pre>
+ * PreparedDocument base = PreparedDocument.prepare(publishedHtml);
+ * for (String draft : drafts) {
+ * 	String html = new Diff(base, draft).build();
+ * }
+ * </pre>
+ */
+public final class PreparedDocument {
+
+	private final Words words;
+	private final SymbolTable symbols;
+	private final int[] wordIds;
+	private final WordIndex wordIndex;
+
+	private PreparedDocument(Words words, SymbolTable symbols, int[] wordIds, WordIndex wordIndex) {
+		this.words = words;
+		this.symbols = symbols;
+		this.wordIds = wordIds;
+		this.wordIndex = wordIndex;
+	}
+
+	/**
+	 * @param text not null.
+	 * @return prepared document, not null.
+	 */
+	public static PreparedDocument prepare(String text) {
+		Words words = Words.tokenize(text);
+		SymbolTable symbols = new SymbolTable();
+		int[] wordIds = symbols.intern(words);
+		return new PreparedDocument(words, symbols, wordIds, WordIndex.build(wordIds, symbols.size()));
+	}
+
+	public String getText() {
+		return words.getText();
+	}
+
+	/**
+	 * @return number of words.
+	 */
+	public int size() {
+		return words.size();
+	}
+
+	Words words() {
+		return words;
+	}
+
+	int[] wordIds() {
+		return wordIds;
+	}
+
+	/**
+	 * @return number of distinct words; their ids are 0 up to this.
+	 */
+	int symbolCount() {
+		return symbols.size();
+	}
+
+	WordIndex wordIndex() {
+		return wordIndex;
+	}
+
+	/**
+	 * Gives other words ids that agree with this document's: a word it contains
+	 * keeps its id here, any other word is numbered from symbolCount on through
+	 * overflow.
+	 * @param overflow table for words this document does not contain.
+	 * @param reuse array to write the ids into if it is long enough, may be null.
+	 * @return the id of every word in the first words.size() entries, not null.
+	 */
+	int[] intern(Words other, SymbolTable overflow, int[] reuse) {
+		return intern(other, 0, other.size(), overflow, reuse);
+	}
+
+	/**
+	 * Like {@link #intern(Words, SymbolTable, int[])} for the words from start
+	 * up to end only.
+	 * @return the id of word start + i in entry i, not null.
+	 */
+	int[] intern(Words other, int start, int end, SymbolTable overflow, int[] reuse) {
+		int size = end - start;
+		int[] ids = reuse != null && reuse.length >= size ? reuse : new int[size];
+		String text = other.getText();
+		int symbolCount = symbols.size();
+		for (int i = start; i < end; i++) {
+			int id = symbols.find(text, other.start(i), other.end(i));
+			ids[i - start] = id >= 0 ? id : symbolCount + overflow.intern(text, other.start(i), other.end(i));
+		}
+		return ids;
+	}
+
+}
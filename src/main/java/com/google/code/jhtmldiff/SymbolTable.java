@@ -0,0 +1,216 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import java.util.Arrays;
+
+/**
+ * Assigns each distinct word a dense <code>int</code> id, so that words can be
+ * compared without hashing or comparing strings.
+ * <p>
+ * Words are hashed straight from their offsets in the source text; no
+ * strings are created. Ids are handed out in order of first appearance,
+ * starting at 0.
+ */
+final class SymbolTable {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/** Open addressing table of id + 1, 0 marks an empty slot. */
+	private int[] slots;
+	private String[] symbolTexts;
+	private int[] symbolStarts;
+	private int[] symbolEnds;
+	private int[] symbolHashes;
+	private int size;
+
+	SymbolTable() {
+		this.slots = new int[INITIAL_CAPACITY * 2];
+		this.symbolTexts = new String[INITIAL_CAPACITY];
+		this.symbolStarts = new int[INITIAL_CAPACITY];
+		this.symbolEnds = new int[INITIAL_CAPACITY];
+		this.symbolHashes = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * @return number of distinct words seen so far.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the id of every word, in order, not null.
+	 */
+	int[] intern(Words words) {
+		return intern(words, null);
+	}
+
+	/**
+	 * @param reuse array to write the ids into if it is long enough, may be null.
+	 * @return the id of every word in the first words.size() entries, not null.
+	 */
+	int[] intern(Words words, int[] reuse) {
+		int size = words.size();
+		int[] ids = reuse != null && reuse.length >= size ? reuse : new int[size];
+		String text = words.getText();
+		for (int i = 0; i < size; i++) {
+			ids[i] = intern(text, words.start(i), words.end(i));
+		}
+		return ids;
+	}
+
+	/**
+	 * Forgets every word, keeping the arrays for reuse. Costs the number of
+	 * words held rather than the capacity, unless most slots are in use.
+	 */
+	void clear() {
+		if (size * 4 < slots.length) {
+			int mask = slots.length - 1;
+			for (int id = 0; id < size; id++) {
+				// Slots cleared before are skipped over rather than ending the probe.
+				int slot = mix(symbolHashes[id]) & mask;
+				while (slots[slot] != id + 1) {
+					slot = (slot + 1) & mask;
+				}
+				slots[slot] = 0;
+			}
+		}
+		else {
+			Arrays.fill(slots, 0);
+		}
+		Arrays.fill(symbolTexts, 0, size, null);
+		size = 0;
+	}
+
+	/**
+	 * @return number of distinct words the table holds without growing.
+	 */
+	int capacity() {
+		return symbolHashes.length;
+	}
+
+	int intern(String text, int start, int end) {
+		int hash = hash(text, start, end);
+		int slot = slot(text, start, end, hash);
+		int entry = slots[slot];
+		if (entry != 0) {
+			return entry - 1;
+		}
+
+		int id = add(text, start, end, hash);
+		slots[slot] = id + 1;
+		if (size * 2 > slots.length) {
+			rehash();
+		}
+		return id;
+	}
+
+	/**
+	 * Looks a word up without adding it, so a table no longer interned into
+	 * can be read by several threads at once.
+	 * @return id of the word, -1 if it has not been seen.
+	 */
+	int find(String text, int start, int end) {
+		return slots[slot(text, start, end, hash(text, start, end))] - 1;
+	}
+
+	/**
+	 * @return the slot holding the word, or the empty slot it belongs in.
+	 */
+	private int slot(String text, int start, int end, int hash) {
+		int mask = slots.length - 1;
+		int slot = mix(hash) & mask;
+		while (true) {
+			int entry = slots[slot];
+			if (entry == 0 || symbolHashes[entry - 1] == hash && matches(entry - 1, text, start, end)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private boolean matches(int id, String text, int start, int end) {
+		int length = end - start;
+		int symbolStart = symbolStarts[id];
+		return symbolEnds[id] - symbolStart == length
+				&& symbolTexts[id].regionMatches(symbolStart, text, start, length);
+	}
+
+	private int add(String text, int start, int end, int hash) {
+		if (size == symbolHashes.length) {
+			int capacity = size * 2;
+			symbolTexts = copyOf(symbolTexts, capacity);
+			symbolStarts = copyOf(symbolStarts, capacity);
+			symbolEnds = copyOf(symbolEnds, capacity);
+			symbolHashes = copyOf(symbolHashes, capacity);
+		}
+		symbolTexts[size] = text;
+		symbolStarts[size] = start;
+		symbolEnds[size] = end;
+		symbolHashes[size] = hash;
+		return size++;
+	}
+
+	private void rehash() {
+		int[] table = new int[slots.length * 2];
+		int mask = table.length - 1;
+		for (int id = 0; id < size; id++) {
+			int slot = mix(symbolHashes[id]) & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = id + 1;
+		}
+		slots = table;
+	}
+
+	private static int hash(String text, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++) {
+			h = 31 * h + text.charAt(i);
+		}
+		return h;
+	}
+
+	private static int mix(int h) {
+		h ^= (h >>> 16);
+		h *= 0x85ebca6b;
+		h ^= (h >>> 13);
+		return h;
+	}
+
+	private static int[] copyOf(int[] a, int length) {
+		int[] copy = new int[length];
+		System.arraycopy(a, 0, copy, 0, a.length);
+		return copy;
+	}
+
+	private static String[] copyOf(String[] a, int length) {
+		String[] copy = new String[length];
+		System.arraycopy(a, 0, copy, 0, a.length);
+		return copy;
+	}
+
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import java.util.Arrays;
+
+/**
+ * The positions of every word id in a sequence of word ids, kept in two flat
+ * <code>int</code> arrays: the positions of id <code>w</code> are
+ * <code>positions[first[w]]</code> up to <code>positions[first[w + 1]]</code>,
+ * in ascending order. Ids not below the symbol count the index was built
+ * with have no positions.
+ * <p>
+ * A sparse index, for a few words out of a large vocabulary, instead keeps
+ * each id's own end and a stamp telling which ids it holds, so that building
+ * it costs as much as the words rather than the vocabulary.
+ */
+public final class WordIndex {
+
+	private final int[] first;
+	private final int[] positions;
+	private final int symbolCount;
+	/** For a sparse index: end of each id's positions, and its stamp. */
+	private final int[] ends, stamps;
+	private final int stamp;
+
+	private WordIndex(int[] first, int[] positions, int symbolCount) {
+		this(first, positions, symbolCount, null, null, 0);
+	}
+
+	private WordIndex(int[] first, int[] positions, int symbolCount, int[] ends, int[] stamps, int stamp) {
+		this.first = first;
+		this.positions = positions;
+		this.symbolCount = symbolCount;
+		this.ends = ends;
+		this.stamps = stamps;
+		this.stamp = stamp;
+	}
+
+	/**
+	 * @param words word ids, each less than symbolCount.
+	 * @param symbolCount number of distinct ids.
+	 */
+	static WordIndex build(int[] words, int symbolCount) {
+		return build(words, words.length, symbolCount, null);
+	}
+
+	/**
+	 * @param words word ids, each less than symbolCount.
+	 * @param size number of words to index from the start of words.
+	 * @param symbolCount number of distinct ids.
+	 * @param reuse index whose arrays may be overwritten, may be null.
+	 */
+	static WordIndex build(int[] words, int size, int symbolCount, WordIndex reuse) {
+		return build(words, 0, size, symbolCount, reuse);
+	}
+
+	/**
+	 * Indexes the words from start up to end only; positions still count from
+	 * the start of words.
+	 */
+	static WordIndex build(int[] words, int start, int end, int symbolCount, WordIndex reuse) {
+		int size = end - start;
+		int[] first = reuse != null && reuse.first.length > symbolCount ? reuse.first : new int[symbolCount + 1];
+		int[] positions = reuse != null && reuse.positions.length >= size ? reuse.positions : new int[size];
+		Arrays.fill(first, 0, symbolCount + 1, 0);
+
+		for (int i = start; i < end; i++) {
+			first[words[i] + 1]++;
+		}
+		for (int id = 0; id < symbolCount; id++) {
+			first[id + 1] += first[id];
+		}
+
+		// Fill from the back, counting each id's end down to its start; first
+		// then holds each id's start one slot along, so shift it back.
+		for (int i = end - 1; i >= start; i--) {
+			positions[--first[words[i] + 1]] = i;
+		}
+		System.arraycopy(first, 1, first, 0, symbolCount);
+		first[symbolCount] = size;
+		return new WordIndex(first, positions, symbolCount);
+	}
+
+	/**
+	 * Like {@link #build(int[], int, int, int, WordIndex)}, but in time
+	 * proportional to end - start whatever the symbol count, which suits
+	 * indexing a few words again and again. Only a sparse reuse index has its
+	 * arrays reused.
+	 */
+	static WordIndex buildSparse(int[] words, int start, int end, int symbolCount, WordIndex reuse) {
+		int size = end - start;
+		int[] first, ends, stamps;
+		int stamp;
+		if (reuse != null && reuse.stamps != null) {
+			first = reuse.first;
+			ends = reuse.ends;
+			stamps = reuse.stamps;
+			stamp = reuse.stamp + 1;
+		}
+		else {
+			first = ends = stamps = new int[0];
+			stamp = 1;
+		}
+		if (stamps.length < symbolCount) {
+			int capacity = Math.max(symbolCount, stamps.length + (stamps.length >> 1));
+			first = Arrays.copyOf(first, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+			stamps = Arrays.copyOf(stamps, capacity);
+		}
+		if (stamp == Integer.MAX_VALUE) {
+			Arrays.fill(stamps, 0);
+			stamp = 1;
+		}
+		int[] positions = reuse != null && reuse.positions.length >= size ? reuse.positions : new int[size];
+
+		// Count each id as a negative end, then give ids their start in order of
+		// first appearance and fill positions, counting each end up again.
+		for (int i = start; i < end; i++) {
+			int id = words[i];
+			if (stamps[id] != stamp) {
+				stamps[id] = stamp;
+				ends[id] = 0;
+			}
+			ends[id]--;
+		}
+		int next = 0;
+		for (int i = start; i < end; i++) {
+			int id = words[i];
+			if (ends[id] < 0) {
+				first[id] = next;
+				next -= ends[id];
+				ends[id] = first[id];
+			}
+			positions[ends[id]++] = i;
+		}
+		return new WordIndex(first, positions, symbolCount, ends, stamps, stamp);
+	}
+
+	/**
+	 * @return number of words the index holds without growing.
+	 */
+	int capacity() {
+		return Math.max(first.length, positions.length);
+	}
+
+	/**
+	 * @return index into {@link #position(int)} of the first position of the id.
+	 */
+	public int first(int id) {
+		if (id >= symbolCount) {
+			return 0;
+		}
+		if (stamps == null) {
+			return first[id];
+		}
+		return stamps[id] == stamp ? first[id] : 0;
+	}
+
+	/**
+	 * @return index into {@link #position(int)} just past the last position of the id.
+	 */
+	public int end(int id) {
+		if (id >= symbolCount) {
+			return 0;
+		}
+		if (stamps == null) {
+			return first[id + 1];
+		}
+		return stamps[id] == stamp ? ends[id] : 0;
+	}
+
+	public int position(int i) {
+		return positions[i];
+	}
+
+}
@@ -0,0 +1,362 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The words (character runs, tags and whitespace runs) of a text, recorded as
+ * offsets into the original text.
+ * <p>
+ * Words always cover the whole text with no gaps, so word <code>i</code> is
+ * <code>text[offsets[i], offsets[i + 1])</code>.
+ * <p>
+ * Each word is also classified while tokenizing, so telling tags apart later
+ * never needs a regex.
+ */
+final class Words {
+
+	/** Word kinds, see {@link #kind(int)}. */
+	static final byte TEXT = 0, WHITESPACE = 1, OPENING_TAG = 2, CLOSING_TAG = 3;
+
+	/**
+	 * Tag names recognized while tokenizing. A tag's name code is its index in
+	 * here plus one, or 0 for any other name.
+	 */
+	static final String[] TAG_NAMES = new String[] { "strong", "b", "i", "big", "small", "u", "sub", "sup",
+			"strike", "s", "p", "div", "li", "ul", "ol", "dl", "dt", "dd", "table", "thead", "tbody", "tfoot",
+			"tr", "td", "th", "h1", "h2", "h3", "h4", "h5", "h6", "blockquote", "pre", "section", "article",
+			"header", "footer", "nav", "aside", "form", "figure", "hr" };
+
+	/** Set on tags without attributes, such as &lt;b&gt; or &lt;/b&gt;. */
+	private static final byte BARE = 4;
+	private static final byte KIND_MASK = 3;
+
+	private String text;
+	private final int[] offsets;
+	private final byte[] kinds;
+	private final byte[] tagNames;
+	private final int size;
+
+	private Words(String text, int[] offsets, byte[] kinds, byte[] tagNames, int size) {
+		this.text = text;
+		this.offsets = offsets;
+		this.kinds = kinds;
+		this.tagNames = tagNames;
+		this.size = size;
+	}
+
+	/**
+	 * @param names each one of TAG_NAMES.
+	 * @return lookup table from tag name code, see {@link #tagName(int)}, to
+	 *         whether it is one of names.
+	 */
+	static boolean[] TagNameTable(String... names) {
+		List<String> known = Arrays.asList(TAG_NAMES);
+		boolean[] table = new boolean[TAG_NAMES.length + 1];
+		for (String name : names) {
+			int code = known.indexOf(name) + 1;
+			if (code == 0) {
+				throw new IllegalArgumentException("not in TAG_NAMES: " + name);
+			}
+			table[code] = true;
+		}
+		return table;
+	}
+
+	/**
+	 * Splits the text into words in a single pass without creating any
+	 * intermediate strings.
+	 * @param text not null.
+	 * @return words, not null.
+	 */
+	static Words tokenize(String text) {
+		return tokenize(text, null);
+	}
+
+	/**
+	 * Like {@link #tokenize(String)}, but writes into the arrays of earlier
+	 * words when they are large enough.
+	 * @param reuse words that are no longer needed, may be null.
+	 */
+	static Words tokenize(String text, Words reuse) {
+		int length = text.length();
+		// Every word is at least one character long.
+		int[] offsets;
+		byte[] kinds, tagNames;
+		if (reuse != null && reuse.kinds.length >= length) {
+			offsets = reuse.offsets;
+			kinds = reuse.kinds;
+			tagNames = reuse.tagNames;
+		}
+		else {
+			offsets = new int[length + 1];
+			kinds = new byte[length];
+			tagNames = new byte[length];
+		}
+		int size = 0;
+		int wordStart = 0;
+		Mode mode = Mode.character;
+
+		for (int i = 0; i < length; i++) {
+			char character = text.charAt(i);
+			switch (mode) {
+				case character:
+					if (IsStartOfTag(character)) {
+						if (wordStart < i) {
+							kinds[size] = TEXT;
+							offsets[size++] = wordStart;
+						}
+						wordStart = i;
+						mode = Mode.tag;
+					}
+					else if (IsWhiteSpace(character)) {
+						if (wordStart < i) {
+							kinds[size] = TEXT;
+							offsets[size++] = wordStart;
+						}
+						wordStart = i;
+						mode = Mode.whitespace;
+					}
+					break;
+				case tag:
+					if (IsEndOfTag(character)) {
+						ClassifyTag(text, wordStart, i + 1, kinds, tagNames, size);
+						offsets[size++] = wordStart;
+						wordStart = i + 1;
+						mode = Mode.character;
+					}
+					break;
+				case whitespace:
+					if (IsStartOfTag(character)) {
+						if (wordStart < i) {
+							kinds[size] = WHITESPACE;
+							offsets[size++] = wordStart;
+						}
+						wordStart = i;
+						mode = Mode.tag;
+					}
+					else if (!IsWhiteSpace(character)) {
+						if (wordStart < i) {
+							kinds[size] = WHITESPACE;
+							offsets[size++] = wordStart;
+						}
+						wordStart = i;
+						mode = Mode.character;
+					}
+					break;
+				default:
+					break;
+			}
+		}
+		if (wordStart < length) {
+			// An unterminated tag is just text.
+			kinds[size] = mode == Mode.whitespace ? WHITESPACE : TEXT;
+			offsets[size++] = wordStart;
+		}
+		offsets[size] = length;
+
+		return new Words(text, offsets, kinds, tagNames, size);
+	}
+
+	/**
+	 * Classifies a word running from &lt; to &gt; the same way as the regexes
+	 * <code>&lt;[^&gt;]+&gt;</code> and <code>&lt;/[^&gt;]+&gt;</code>, and looks up
+	 * its name.
+	 */
+	private static void ClassifyTag(String text, int start, int end, byte[] kinds, byte[] tagNames, int word) {
+		if (end - start < 3) {
+			kinds[word] = TEXT;
+			return;
+		}
+		boolean closing = text.charAt(start + 1) == '/' && end - start > 3;
+		int nameStart = closing ? start + 2 : start + 1;
+		int nameEnd = nameStart;
+		while (nameEnd < end - 1) {
+			char c = text.charAt(nameEnd);
+			if (c == '/' || IsWhiteSpace(c)) {
+				break;
+			}
+			nameEnd++;
+		}
+
+		int rest = nameEnd;
+		if (!closing) {
+			while (rest < end - 1 && IsWhiteSpace(text.charAt(rest))) {
+				rest++;
+			}
+		}
+		kinds[word] = (byte) ((closing ? CLOSING_TAG : OPENING_TAG) | (rest == end - 1 ? BARE : 0));
+		tagNames[word] = (byte) TagName(text, nameStart, nameEnd);
+	}
+
+	private static int TagName(String text, int start, int end) {
+		int length = end - start;
+		for (int i = 0; i < TAG_NAMES.length; i++) {
+			String name = TAG_NAMES[i];
+			if (name.length() == length && text.regionMatches(start, name, 0, length)) {
+				return i + 1;
+			}
+		}
+		return 0;
+	}
+
+	private static boolean IsStartOfTag(char val) {
+		return val == '<';
+	}
+
+	private static boolean IsEndOfTag(char val) {
+		return val == '>';
+	}
+
+	/**
+	 * Same characters as the regex <code>\s</code>.
+	 */
+	static boolean IsWhiteSpace(char value) {
+		return value == ' ' || value == '\t' || value == '\n' || value == '\u000B' || value == '\f'
+				|| value == '\r';
+	}
+
+	String getText() {
+		return text;
+	}
+
+	/**
+	 * @return number of characters the arrays can hold without growing.
+	 */
+	int capacity() {
+		return kinds.length;
+	}
+
+	/**
+	 * Lets go of the text, so words kept around for their arrays do not keep it
+	 * reachable.
+	 */
+	void release() {
+		text = null;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Words of text, which is this words' text with the words from start to end
+	 * replaced by the first middleSize of middle, a tokenization of part of text
+	 * starting at base. The arrays are written into when large enough, so this
+	 * words must not be used afterwards.
+	 */
+	Words splice(String text, int start, int end, Words middle, int middleSize, int base) {
+		int newSize = start + middleSize + (size - end);
+		int delta = text.length() - this.text.length();
+		int[] offsets = this.offsets;
+		byte[] kinds = this.kinds, tagNames = this.tagNames;
+		if (kinds.length < newSize) {
+			int capacity = Math.max(newSize, kinds.length + (kinds.length >> 1));
+			offsets = Arrays.copyOf(offsets, capacity + 1);
+			kinds = Arrays.copyOf(kinds, capacity);
+			tagNames = Arrays.copyOf(tagNames, capacity);
+		}
+		int tail = start + middleSize;
+		System.arraycopy(this.offsets, end, offsets, tail, size - end + 1);
+		System.arraycopy(this.kinds, end, kinds, tail, size - end);
+		System.arraycopy(this.tagNames, end, tagNames, tail, size - end);
+		for (int i = tail; i <= newSize; i++) {
+			offsets[i] += delta;
+		}
+		for (int i = 0; i < middleSize; i++) {
+			offsets[start + i] = base + middle.offsets[i];
+			kinds[start + i] = middle.kinds[i];
+			tagNames[start + i] = middle.tagNames[i];
+		}
+		return new Words(text, offsets, kinds, tagNames, newSize);
+	}
+
+	/**
+	 * @return words with arrays of their own, trimmed to size.
+	 */
+	Words copy() {
+		return new Words(text, Arrays.copyOf(offsets, size + 1), Arrays.copyOf(kinds, size), Arrays.copyOf(
+				tagNames, size), size);
+	}
+
+	/**
+	 * @param i 0 to size, where size gives the end of the text.
+	 */
+	int start(int i) {
+		return offsets[i];
+	}
+
+	int end(int i) {
+		return offsets[i + 1];
+	}
+
+	/**
+	 * @return one of TEXT, WHITESPACE, OPENING_TAG or CLOSING_TAG.
+	 */
+	int kind(int i) {
+		return kinds[i] & KIND_MASK;
+	}
+
+	boolean isTag(int i) {
+		return kind(i) >= OPENING_TAG;
+	}
+
+	/**
+	 * @return true for a tag without attributes, such as &lt;b&gt; or &lt;/b&gt;.
+	 */
+	boolean isBareTag(int i) {
+		return (kinds[i] & BARE) != 0;
+	}
+
+	/**
+	 * @return index in TAG_NAMES plus one, 0 for any other name or a word that is
+	 *         not a tag.
+	 */
+	int tagName(int i) {
+		// Only tags set their entry, reused arrays may hold anything for other words.
+		return isTag(i) ? tagNames[i] : 0;
+	}
+
+	/**
+	 * @return the word as a new string, not null.
+	 */
+	String get(int i) {
+		return text.substring(offsets[i], offsets[i + 1]);
+	}
+
+	String[] toArray() {
+		String[] words = new String[size];
+		for (int i = 0; i < size; i++) {
+			words[i] = get(i);
+		}
+		return words;
+	}
+
+	static enum Mode {
+		character, tag, whitespace,
+	}
+
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+
+public class DiffBatchTest {
+
+	private final ForkJoinPool pool = new ForkJoinPool(4);
+
+	@After
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	@Test
+	public void shouldReturnDiffsInOrder() throws Exception {
+		List<DiffBatch.Pair> pairs = new ArrayList<DiffBatch.Pair>();
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 100; i++) {
+			String oldText = "a b " + i + " <p>c</p>";
+			String newText = "a " + (i * 7) + " b <p>d</p>";
+			pairs.add(DiffBatch.pair(oldText, newText));
+			expected.add(new Diff(oldText, newText).build());
+		}
+		assertEquals(expected, new DiffBatch(DiffEngine.DEFAULT, pool).diff(pairs));
+	}
+
+	@Test
+	public void shouldReportFailuresAndContinue() throws Exception {
+		List<DiffBatch.Pair> pairs = new ArrayList<DiffBatch.Pair>();
+		for (int i = 0; i < 20; i++) {
+			pairs.add(i == 5 ? unreadable() : DiffBatch.pair("a", "b"));
+		}
+		final AtomicInteger completed = new AtomicInteger();
+		final AtomicInteger failed = new AtomicInteger(-1);
+		new DiffBatch(DiffEngine.DEFAULT, pool, 3).diff(pairs.iterator(), new DiffBatch.Callback<DiffBatch.Pair>() {
+
+			public void completed(int index, DiffBatch.Pair pair, String diff) {
+				completed.incrementAndGet();
+			}
+
+			public void failed(int index, DiffBatch.Pair pair, Throwable e) {
+				failed.set(index);
+			}
+		});
+		assertEquals(19, completed.get());
+		assertEquals(5, failed.get());
+	}
+
+	@Test
+	public void shouldFinishSubmittedPairsWhenTheIteratorFails() throws Exception {
+		final AtomicInteger completed = new AtomicInteger();
+		Iterator<DiffBatch.Pair> pairs = new Iterator<DiffBatch.Pair>() {
+
+			private int next;
+
+			public boolean hasNext() {
+				return true;
+			}
+
+			public DiffBatch.Pair next() {
+				if (next++ == 6) {
+					throw new IllegalStateException("broken");
+				}
+				return slow();
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+		try {
+			new DiffBatch(DiffEngine.DEFAULT, pool, 3).diff(pairs, new DiffBatch.Callback<DiffBatch.Pair>() {
+
+				public void completed(int index, DiffBatch.Pair pair, String diff) {
+					completed.incrementAndGet();
+				}
+
+				public void failed(int index, DiffBatch.Pair pair, Throwable e) {
+				}
+			});
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals(6, completed.get());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldThrowFirstFailure() throws Exception {
+		List<DiffBatch.Pair> pairs = new ArrayList<DiffBatch.Pair>();
+		pairs.add(DiffBatch.pair("a", "b"));
+		pairs.add(unreadable());
+		new DiffBatch(DiffEngine.DEFAULT, pool).diff(pairs);
+	}
+
+	@Test(expected = LinkageError.class)
+	public void shouldThrowErrors() throws Exception {
+		List<DiffBatch.Pair> pairs = new ArrayList<DiffBatch.Pair>();
+		pairs.add(DiffBatch.pair("a", "b"));
+		pairs.add(new DiffBatch.Pair() {
+
+			public String getOldText() {
+				throw new LinkageError("broken");
+			}
+
+			public String getNewText() {
+				return "";
+			}
+		});
+		new DiffBatch(DiffEngine.DEFAULT, pool).diff(pairs);
+	}
+
+	private static DiffBatch.Pair slow() {
+		return new DiffBatch.Pair() {
+
+			public String getOldText() throws IOException {
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				return "a";
+			}
+
+			public String getNewText() {
+				return "b";
+			}
+		};
+	}
+
+	private static DiffBatch.Pair unreadable() {
+		return new DiffBatch.Pair() {
+
+			public String getOldText() throws IOException {
+				throw new IOException("unreadable");
+			}
+
+			public String getNewText() {
+				return "";
+			}
+		};
+	}
+
+}
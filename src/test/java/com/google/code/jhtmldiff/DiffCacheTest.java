@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+
+public class DiffCacheTest {
+
+	@Test
+	public void shouldReturnCachedDiff() throws Exception {
+		DiffCache cache = new DiffCache(DiffEngine.DEFAULT, 1024 * 1024);
+		String first = cache.diff("a b c", "a x c");
+		assertEquals(new Diff("a b c", "a x c").build(), first);
+		assertSame(first, cache.diff("a b c", "a x c"));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertFalse(first.equals(cache.diff("a x c", "a b c")));
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void shouldKeyByAlgorithm() throws Exception {
+		DiffCache longestMatch = new DiffCache(DiffEngine.DEFAULT, 1024 * 1024);
+		DiffCache myers = new DiffCache(DiffEngine.DEFAULT.withAlgorithm(DiffAlgorithm.MYERS), 1024 * 1024);
+		assertEquals(new Diff("a b", "b a", DiffAlgorithm.MYERS).build(), myers.diff("a b", "b a"));
+		assertEquals(new Diff("a b", "b a").build(), longestMatch.diff("a b", "b a"));
+	}
+
+	@Test
+	public void shouldNotKeepDegradedDiffs() throws Exception {
+		Random random = new Random(3);
+		StringBuilder oldText = new StringBuilder(), newText = new StringBuilder();
+		for (int i = 0; i < 300; i++) {
+			oldText.append("w").append(random.nextInt(20)).append(' ');
+			newText.append("w").append(random.nextInt(20)).append(' ');
+		}
+		DiffEngine engine = DiffEngine.DEFAULT.withWorkLimit(1000);
+		DiffCache cache = new DiffCache(engine, 1024 * 1024);
+		assertEquals(engine.diff(oldText.toString(), newText.toString()),
+				cache.diff(oldText.toString(), newText.toString()));
+		cache.diff(oldText.toString(), newText.toString());
+		assertEquals(2, cache.getMisses());
+		assertEquals(0, cache.size());
+		cache.diff("a b", "a c");
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void shouldKeyByRenderer() throws Exception {
+		DiffCache html = new DiffCache(DiffEngine.DEFAULT, 1024 * 1024);
+		DiffCache json = new DiffCache(DiffEngine.DEFAULT.withRenderer(DiffRenderer.JSON), 1024 * 1024);
+		assertEquals(DiffEngine.DEFAULT.withRenderer(DiffRenderer.JSON).diff("a b", "a c"), json.diff("a b", "a c"));
+		assertEquals(new Diff("a b", "a c").build(), html.diff("a b", "a c"));
+	}
+
+	@Test
+	public void shouldEvictLeastRecentlyUsed() throws Exception {
+		long entry = DiffCache.ENTRY_OVERHEAD + 2 * new Diff("a", "b").build().length();
+		DiffCache cache = new DiffCache(DiffEngine.DEFAULT, 2 * entry);
+		cache.diff("a", "b");
+		cache.diff("c", "d");
+		cache.diff("a", "b");
+		cache.diff("e", "f");
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictions());
+		cache.diff("a", "b");
+		assertEquals(2, cache.getHits());
+		cache.diff("c", "d");
+		assertEquals(4, cache.getMisses());
+		assertTrue(cache.getBytes() <= 2 * entry);
+	}
+
+	@Test
+	public void shouldComputeConcurrentRequestsOnce() throws Exception {
+		final DiffCache cache = new DiffCache(DiffEngine.DEFAULT, 16 * 1024 * 1024);
+		final StringBuilder oldText = new StringBuilder(), newText = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			oldText.append("w").append(i % 97).append(' ');
+			newText.append("w").append(i % 89).append(' ');
+		}
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(new Callable<String>() {
+
+					public String call() throws Exception {
+						start.await();
+						return cache.diff(oldText.toString(), newText.toString());
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<String> result : results) {
+				assertSame(results.get(0).get(), result.get());
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+		assertEquals(1, cache.getMisses());
+		assertEquals(7, cache.getHits());
+	}
+
+}
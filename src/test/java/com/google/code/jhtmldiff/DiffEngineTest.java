@@ -0,0 +1,238 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+
+public class DiffEngineTest {
+
+	@Test
+	public void shouldMatchDiffAcrossInputSizes() throws Exception {
+		DiffEngine engine = DiffEngine.DEFAULT;
+		String[][] inputs = new String[][] { { text(200, 0), text(200, 3) }, { "a b", "a c" },
+				{ "<p>x</p>", "<p>y</p>" }, { text(50, 1), text(60, 2) } };
+		for (String[] input : inputs) {
+			assertEquals(new Diff(input[0], input[1]).build(), engine.diff(input[0], input[1]));
+		}
+	}
+
+	@Test
+	public void shouldDiffConcurrently() throws Exception {
+		final DiffEngine engine = DiffEngine.DEFAULT.withAlgorithm(DiffAlgorithm.MYERS);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (int i = 0; i < 40; i++) {
+				final String oldText = text(20 + i * 7, i);
+				final String newText = text(30 + i * 5, i + 1);
+				results.add(executor.submit(new Callable<Boolean>() {
+
+					public Boolean call() throws Exception {
+						String expected = new Diff(oldText, newText, DiffAlgorithm.MYERS).build();
+						return expected.equals(engine.diff(oldText, newText));
+					}
+				}));
+			}
+			for (Future<Boolean> result : results) {
+				assertTrue(result.get());
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void shouldDiffLargeTextsInParallelAsSequentially() throws Exception {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			DiffEngine parallel = DiffEngine.DEFAULT.withPool(pool);
+			for (int seed = 0; seed < 3; seed++) {
+				Random random = new Random(seed);
+				StringBuilder oldText = new StringBuilder();
+				StringBuilder newText = new StringBuilder();
+				for (int i = 0; i < 8000; i++) {
+					String word = "w" + random.nextInt(5000) + (i % 40 == 0 ? "<p>" : " ");
+					int edit = random.nextInt(100);
+					oldText.append(edit < 2 ? "" : word);
+					newText.append(edit < 4 && edit >= 2 ? "" : word);
+					if (edit == 4) {
+						newText.append("x ");
+					}
+				}
+				assertEquals(new Diff(oldText.toString(), newText.toString()).build(),
+						parallel.diff(oldText.toString(), newText.toString()));
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void shouldDegradeOnceWorkLimitIsSpent() throws Exception {
+		Random random = new Random(3);
+		StringBuilder oldBuilder = new StringBuilder(), newBuilder = new StringBuilder();
+		for (int i = 0; i < 300; i++) {
+			oldBuilder.append("w").append(random.nextInt(20)).append(i % 10 == 0 ? "<p>" : " ");
+			newBuilder.append("w").append(random.nextInt(20)).append(i % 10 == 0 ? "<p>" : " ");
+		}
+		String oldText = oldBuilder.toString(), newText = newBuilder.toString();
+		for (DiffAlgorithm algorithm : new DiffAlgorithm[] { DiffAlgorithm.LONGEST_MATCH, DiffAlgorithm.MYERS,
+				DiffAlgorithm.BLOCKS }) {
+			DiffEngine engine = DiffEngine.DEFAULT.withAlgorithm(algorithm);
+			assertFalse(engine.withWorkLimit(100000000).editScript(oldText, newText).isDegraded());
+
+			EditScript coarse = engine.withWorkLimit(1).editScript(oldText, newText);
+			assertTrue(coarse.isDegraded());
+			assertTrue(coarse.size() < engine.editScript(oldText, newText).size());
+			StringBuilder rebuilt = new StringBuilder();
+			for (int i = 0; i < coarse.size(); i++) {
+				rebuilt.append(newText, coarse.charStartInNew(i), coarse.charEndInNew(i));
+			}
+			assertEquals(newText, rebuilt.toString());
+			// The budget is per diff, not per engine.
+			DiffEngine limited = engine.withWorkLimit(1000);
+			assertTrue(limited.editScript(oldText, newText).isDegraded());
+			assertFalse(limited.editScript("a b", "a c").isDegraded());
+		}
+	}
+
+	@Test
+	public void shouldSpendWorkOnTheEditOnly() throws Exception {
+		Random random = new Random(6);
+		StringBuilder oldText = new StringBuilder(), newText = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			int word = random.nextInt(500);
+			oldText.append(i % 40 == 0 ? "<p>" : "").append("w").append(word).append(' ');
+			newText.append(i % 40 == 0 ? "<p>" : "").append("w").append(i == 10000 ? "typo" : word).append(' ');
+		}
+		for (DiffAlgorithm algorithm : new DiffAlgorithm[] { DiffAlgorithm.LONGEST_MATCH, DiffAlgorithm.MYERS,
+				DiffAlgorithm.BLOCKS }) {
+			// A search over the whole texts would need millions.
+			EditScript script = DiffEngine.DEFAULT.withAlgorithm(algorithm).withWorkLimit(1000).editScript(
+					oldText.toString(), newText.toString());
+			assertFalse(script.isDegraded());
+			assertEquals(3, script.size());
+		}
+	}
+
+	@Test
+	public void shouldStopAtTimeLimit() throws Exception {
+		StringBuilder oldText = new StringBuilder(), newText = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			oldText.append("<td>").append(i % 7).append("</td> ");
+			newText.append("<td>").append(i % 11).append("</td> ");
+		}
+		DiffMetrics metrics = new DiffMetrics();
+		DiffEngine engine = DiffEngine.DEFAULT.withTimeLimit(50, TimeUnit.MILLISECONDS).withListener(metrics);
+		long start = System.nanoTime();
+		engine.diff(oldText.toString(), newText.toString());
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+		assertEquals(1, metrics.getDegradedDiffCount());
+	}
+
+	@Test
+	public void shouldScoreSimilarity() throws Exception {
+		DiffEngine engine = DiffEngine.DEFAULT;
+		assertEquals(1, engine.similarity("", ""), 0);
+		assertEquals(1, engine.similarity("<p>a b</p>", "<p>a b</p>"), 0);
+		assertEquals(0, engine.similarity("a", "b"), 0);
+		// a, space and b against a, space and c.
+		assertEquals(4.0 / 6, engine.similarity("a b", "a c"), 1e-9);
+		assertEquals(4.0 / 6, new Diff("a b", "a c").similarity(), 1e-9);
+		assertEquals(4.0 / 6, engine.similarity(PreparedDocument.prepare("a b"), "a c", 0), 1e-9);
+	}
+
+	@Test
+	public void shouldTurnDownDissimilarPairsEarly() throws Exception {
+		DiffEngine engine = DiffEngine.DEFAULT;
+		// Too few words in new: the length bound is 2 * 1 / 8.
+		assertEquals(0.25, engine.similarity("a b c d", "a", 0.5), 1e-9);
+		// The same words in another order: only matching tells them apart.
+		double similarity = engine.similarity("a b c d", "d c b a");
+		assertTrue(similarity < 1);
+		assertEquals(similarity, engine.similarity("a b c d", "d c b a", 0.9), 1e-9);
+
+		Random random = new Random(4);
+		for (int n = 0; n < 100; n++) {
+			String oldText = text(random.nextInt(40), n), newText = text(random.nextInt(40), n + random.nextInt(3));
+			double exact = engine.similarity(oldText, newText);
+			for (double minimum = 0.1; minimum < 1; minimum += 0.2) {
+				double screened = engine.similarity(oldText, newText, minimum);
+				if (exact >= minimum) {
+					assertEquals(exact, screened, 0);
+				}
+				else {
+					assertTrue(screened >= exact && screened < minimum);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void shouldNotUnderstateSimilarityOnceWorkLimitIsSpent() throws Exception {
+		Random random = new Random(5);
+		StringBuilder oldText = new StringBuilder(), newText = new StringBuilder();
+		for (int i = 0; i < 300; i++) {
+			int word = random.nextInt(20);
+			oldText.append("w").append(word).append(' ');
+			newText.append("w").append(i == 150 ? 20 : word).append(' ');
+		}
+		double exact = DiffEngine.DEFAULT.similarity(oldText.toString(), newText.toString());
+		assertTrue(exact > 0.9);
+		DiffEngine limited = DiffEngine.DEFAULT.withWorkLimit(1);
+		assertTrue(limited.editScript(oldText.toString(), newText.toString()).isDegraded());
+		assertTrue(limited.similarity(oldText.toString(), newText.toString(), 0.9) >= exact);
+		assertTrue(limited.similarity(oldText.toString(), newText.toString()) >= exact);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldRejectBlocksWithinBlocks() throws Exception {
+		new BlockDiffAlgorithm(DiffAlgorithm.BLOCKS);
+	}
+
+	private static String text(int words, int seed) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < words; i++) {
+			int word = (i * 31 + seed * 17) % 13;
+			text.append(word % 5 == 0 ? "<b>w" + word + "</b>" : "w" + word).append(' ');
+		}
+		return text.toString();
+	}
+
+}
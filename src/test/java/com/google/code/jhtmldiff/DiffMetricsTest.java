@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import com.google.code.jhtmldiff.Diff.Action;
+
+
+public class DiffMetricsTest {
+
+	@Test
+	public void shouldReportStatistics() throws Exception {
+		final DiffStatistics[] reported = new DiffStatistics[1];
+		DiffEngine engine = DiffEngine.DEFAULT.withListener(new DiffListener() {
+
+			public void diffCompleted(DiffStatistics statistics) {
+				reported[0] = statistics;
+			}
+		});
+		String diff = engine.diff("a b c <p>d</p>", "a x c <p>d</p> e");
+		DiffStatistics statistics = reported[0];
+		assertEquals(14, statistics.getOldLength());
+		assertEquals(9, statistics.getOldTokens());
+		assertEquals(11, statistics.getNewTokens());
+		assertEquals(2, statistics.getMatchingBlocks());
+		assertEquals(1, statistics.getOperations(Action.replace));
+		assertEquals(1, statistics.getOperations(Action.insert));
+		assertEquals(0, statistics.getOperations(Action.delete));
+		assertEquals(diff.length(), statistics.getOutputLength());
+		assertEquals(3, statistics.getMaxDepth());
+		assertTrue(statistics.getTotalNanos() >= statistics.getMatchNanos());
+	}
+
+	@Test
+	public void shouldTotalAndPublishOverJmx() throws Exception {
+		DiffMetrics metrics = new DiffMetrics();
+		metrics.setSlowThresholdMillis(0);
+		ObjectName name = metrics.register("test");
+		try {
+			DiffEngine engine = DiffEngine.DEFAULT.withListener(metrics);
+			engine.diff("a b", "a c");
+			engine.diff("a b c", "a c");
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			assertEquals(2L, server.getAttribute(name, "DiffCount"));
+			assertEquals(2L, server.getAttribute(name, "SlowDiffCount"));
+			assertTrue(((String) server.getAttribute(name, "LastSlowDiff")).contains("oldTokens=5"));
+			server.invoke(name, "reset", null, null);
+			assertEquals(0, metrics.getDiffCount());
+		}
+		finally {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		}
+	}
+
+}
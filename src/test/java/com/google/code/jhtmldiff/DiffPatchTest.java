@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class DiffPatchTest {
+
+	private static final String OLD = "<p>The quick <b>brown</b> fox</p> <p>jumps over the lazy dog.</p>",
+			NEW = "<p>The slow <b>brown</b> fox</p> <p>jumps over the lazy café – dog.</p> <p>again</p>";
+
+	@Test
+	public void shouldRenderFromPatch() throws Exception {
+		byte[] patch = Write(new Diff(OLD, NEW).editScript());
+		StringBuilder out = new StringBuilder();
+		DiffRenderer.HTML.render(DiffPatch.read(OLD, new ByteArrayInputStream(patch)), out);
+		assertEquals(new Diff(OLD, NEW).build(), out.toString());
+		assertTrue(patch.length < NEW.length());
+	}
+
+	@Test
+	public void shouldApplyPatch() throws Exception {
+		Random random = new Random(11);
+		String[] words = { "a", "b", "é", " ", "\r\n", "<p>", "</p>", "<b>", "</b>" };
+		for (int n = 0; n < 200; n++) {
+			String oldText = TestTexts.random(random, words, 30), newText = TestTexts.random(random, words, 30);
+			DiffEngine engine = n % 2 == 0 ? DiffEngine.DEFAULT : DiffEngine.DEFAULT
+					.withAlgorithm(DiffAlgorithm.MYERS);
+			byte[] patch = Write(engine.editScript(oldText, newText));
+			StringBuilder out = new StringBuilder();
+			DiffPatch.apply(oldText, new ByteArrayInputStream(patch), out);
+			assertEquals(newText, out.toString());
+			EditScript script = DiffPatch.read(oldText, new ByteArrayInputStream(patch));
+			assertEquals(newText, script.getNewText());
+			assertEquals(engine.diff(oldText, newText), Render(script));
+		}
+	}
+
+	@Test
+	public void shouldRejectOtherText() throws Exception {
+		byte[] patch = Write(new Diff(OLD, NEW).editScript());
+		try {
+			DiffPatch.read(OLD.replace("fox", "cat"), new ByteArrayInputStream(patch));
+			fail();
+		} catch (IOException e) {
+		}
+		try {
+			DiffPatch.apply(OLD, new ByteArrayInputStream(patch, 0, patch.length - 1), new StringBuilder());
+			fail();
+		} catch (IOException e) {
+		}
+	}
+
+	@Test
+	public void shouldRejectCorruptOperations() throws Exception {
+		// a, space, b, space and c.
+		String oldText = "a b c";
+		byte[] patch = Write(new Diff(oldText, oldText).editScript());
+		int header = patch.length - 4;
+		// Equal runs whose old and new word counts differ.
+		AssertCorrupt(oldText, patch, header, 0, 2, 3, 0, 3, 2);
+		// An insert claiming 2 GB of text.
+		AssertCorrupt(oldText, patch, header, 2, 0, 1, 0xff, 0xff, 0xff, 0xff, 0x07);
+		// An insert of three words counted as one.
+		AssertCorrupt(oldText, patch, header, 2, 0, 1, 3, 'x', ' ', 'y', 0, 5, 5);
+	}
+
+	private static void AssertCorrupt(String oldText, byte[] patch, int header, int... records) {
+		ByteArrayOutputStream corrupt = new ByteArrayOutputStream();
+		corrupt.write(patch, 0, header);
+		for (int b : records) {
+			corrupt.write(b);
+		}
+		corrupt.write(0xff);
+		try {
+			DiffPatch.read(oldText, new ByteArrayInputStream(corrupt.toByteArray()));
+			fail();
+		} catch (IOException e) {
+		}
+		try {
+			DiffPatch.apply(oldText, new ByteArrayInputStream(corrupt.toByteArray()), new StringBuilder());
+			fail();
+		} catch (IOException e) {
+		}
+	}
+
+	private static byte[] Write(EditScript script) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DiffPatch.write(script, out);
+		return out.toByteArray();
+	}
+
+	private static String Render(EditScript script) throws IOException {
+		StringBuilder out = new StringBuilder();
+		DiffRenderer.HTML.render(script, out);
+		return out.toString();
+	}
+
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class DiffServerTest {
+
+	private static final String OLD = "<p>The quick <b>brown</b> fox & café</p>", NEW = "<p>The slow <b>brown</b> fox & café</p>";
+
+	private DiffServer server;
+	private String base;
+
+	@Before
+	public void start() throws Exception {
+		server = new DiffServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), DiffEngine.DEFAULT, 2,
+				new DiffMetrics());
+		server.start();
+		base = "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	@After
+	public void stop() {
+		server.stop(0);
+	}
+
+	@Test
+	public void shouldServeDiffs() throws Exception {
+		String form = "old=" + URLEncoder.encode(OLD, "UTF-8") + "&new=" + URLEncoder.encode(NEW, "UTF-8");
+		HttpURLConnection connection = Post("/diff", form);
+		assertEquals(200, connection.getResponseCode());
+		assertEquals(new Diff(OLD, NEW).build(), Read(connection.getInputStream()));
+
+		connection = Post("/diff", form + "&format=json");
+		assertEquals(200, connection.getResponseCode());
+		assertEquals(DiffEngine.DEFAULT.withRenderer(DiffRenderer.JSON).diff(OLD, NEW), Read(connection
+				.getInputStream()));
+
+		String stats = Read(((HttpURLConnection) new URL(base + "/stats").openConnection()).getInputStream());
+		assertTrue(stats, stats.contains("\"requests\":2,"));
+		assertTrue(stats, stats.contains("\"diffs\":2,"));
+	}
+
+	@Test
+	public void shouldRejectBadRequests() throws Exception {
+		assertEquals(400, Post("/diff", "old=a").getResponseCode());
+		assertEquals(400, Post("/diff", "old=a&new=b&format=pdf").getResponseCode());
+		assertEquals(405, ((HttpURLConnection) new URL(base + "/diff").openConnection()).getResponseCode());
+	}
+
+	@Test
+	public void shouldTurnAwayRequestsOverQueue() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		DiffAlgorithm blocking = new DiffAlgorithm() {
+
+			public void findMatchingBlocks(DiffContext context, int startInOld, int endInOld, int startInNew,
+					int endInNew, Matches matchingBlocks) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				DiffAlgorithm.LONGEST_MATCH.findMatchingBlocks(context, startInOld, endInOld, startInNew, endInNew,
+						matchingBlocks);
+			}
+		};
+		server.stop(0);
+		server = new DiffServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), DiffEngine.DEFAULT
+				.withAlgorithm(blocking), 1, new DiffMetrics());
+		server.start();
+		base = "http://127.0.0.1:" + server.getAddress().getPort();
+
+		// One request running and the queue full; the rest are turned away.
+		int running = 1 + DiffServer.QUEUE_PER_THREAD, turnedAway = 3;
+		ExecutorService clients = Executors.newFixedThreadPool(running + turnedAway);
+		try {
+			List<Future<Integer>> statuses = new ArrayList<Future<Integer>>();
+			for (int i = 0; i < running + turnedAway; i++) {
+				statuses.add(clients.submit(new Callable<Integer>() {
+
+					public Integer call() throws Exception {
+						return Post("/diff", "old=a&new=b").getResponseCode();
+					}
+				}));
+			}
+			long deadline = System.currentTimeMillis() + 10000;
+			while (Done(statuses) < turnedAway && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(turnedAway, Done(statuses));
+			for (Future<Integer> status : statuses) {
+				if (status.isDone()) {
+					assertEquals(503, status.get().intValue());
+				}
+			}
+			release.countDown();
+			int served = 0;
+			for (Future<Integer> status : statuses) {
+				if (status.get() == 200) {
+					served++;
+				}
+			}
+			assertEquals(running, served);
+		}
+		finally {
+			release.countDown();
+			clients.shutdown();
+		}
+	}
+
+	@Test
+	public void shouldReportHealth() throws Exception {
+		HttpURLConnection connection = (HttpURLConnection) new URL(base + "/health").openConnection();
+		assertEquals(200, connection.getResponseCode());
+		assertEquals("ok\n", Read(connection.getInputStream()));
+	}
+
+	private HttpURLConnection Post(String path, String form) throws Exception {
+		HttpURLConnection connection = (HttpURLConnection) new URL(base + path).openConnection();
+		connection.setDoOutput(true);
+		connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+		OutputStream out = connection.getOutputStream();
+		out.write(form.getBytes("UTF-8"));
+		out.close();
+		return connection;
+	}
+
+	private static int Done(List<Future<Integer>> statuses) {
+		int done = 0;
+		for (Future<Integer> status : statuses) {
+			if (status.isDone()) {
+				done++;
+			}
+		}
+		return done;
+	}
+
+	private static String Read(InputStream in) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) >= 0) {
+			bytes.write(buffer, 0, read);
+		}
+		in.close();
+		return new String(bytes.toByteArray(), "UTF-8");
+	}
+
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.code.jhtmldiff.Diff.Action;
+
+
+public class DiffSessionTest {
+
+	private static final String BASE = "<p>The quick <b>brown</b> fox</p> <p>jumps over the lazy dog.</p>";
+
+	@Test
+	public void shouldStartLikeDiff() throws Exception {
+		DiffSession session = new DiffSession(PreparedDocument.prepare(BASE), "<p>The slow <b>brown</b> fox</p>");
+		assertEquals(new Diff(BASE, "<p>The slow <b>brown</b> fox</p>").build(), session.build());
+	}
+
+	@Test
+	public void shouldDiffTypedText() throws Exception {
+		DiffSession session = new DiffSession(PreparedDocument.prepare(BASE), BASE);
+		int caret = BASE.indexOf("fox");
+		for (char c : "red ".toCharArray()) {
+			session.edit(caret++, 0, String.valueOf(c));
+		}
+		String edited = BASE.replace("fox", "red fox");
+		assertEquals(edited, session.getNewText());
+		assertEquals(new Diff(BASE, edited).build(), session.build());
+	}
+
+	@Test
+	public void shouldStayValidThroughRandomEdits() throws Exception {
+		Random random = new Random(5);
+		String[] pieces = { "a", "b", "cd", " ", "\n", "<p>", "</p>", "<b>", "</b>", "<a href='x y'>", "</a>", "<",
+				">" };
+		for (int n = 0; n < 30; n++) {
+			String oldText = TestTexts.random(random, pieces, 40);
+			String newText = TestTexts.random(random, pieces, 40);
+			DiffAlgorithm algorithm = n % 3 == 0 ? DiffAlgorithm.MYERS : n % 3 == 1 ? DiffAlgorithm.BLOCKS
+					: DiffAlgorithm.LONGEST_MATCH;
+			DiffSession session = new DiffSession(PreparedDocument.prepare(oldText), newText, algorithm);
+			for (int e = 0; e < 40; e++) {
+				int offset = random.nextInt(newText.length() + 1);
+				int removed = random.nextInt(Math.min(4, newText.length() - offset) + 1);
+				String inserted = TestTexts.random(random, pieces, 3);
+				session.edit(offset, removed, inserted);
+				newText = newText.substring(0, offset) + inserted + newText.substring(offset + removed);
+				assertEquals(newText, session.getNewText());
+				AssertValid(oldText, newText, session.editScript());
+			}
+		}
+	}
+
+	@Test
+	public void shouldTokenizeLikeWholeText() throws Exception {
+		Random random = new Random(9);
+		String[] pieces = { "a", " ", "\t", "<p>", "</p>", "<b c>", "<", ">" };
+		String text = TestTexts.random(random, pieces, 50);
+		DiffSession session = new DiffSession(PreparedDocument.prepare(""), text);
+		for (int e = 0; e < 300; e++) {
+			int offset = random.nextInt(text.length() + 1);
+			int removed = random.nextInt(Math.min(3, text.length() - offset) + 1);
+			String inserted = TestTexts.random(random, pieces, 2);
+			session.edit(offset, removed, inserted);
+			text = text.substring(0, offset) + inserted + text.substring(offset + removed);
+			EditScript script = session.editScript();
+			Words expected = Words.tokenize(text);
+			Words actual = script.newWords();
+			assertEquals(expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.start(i), actual.start(i));
+				assertEquals(expected.kind(i), actual.kind(i));
+				assertEquals(expected.isBareTag(i), actual.isBareTag(i));
+				assertEquals(expected.tagName(i), actual.tagName(i));
+			}
+		}
+	}
+
+	private static void AssertValid(String oldText, String newText, EditScript script) {
+		StringBuilder rebuiltOld = new StringBuilder(), rebuiltNew = new StringBuilder();
+		for (int i = 0; i < script.size(); i++) {
+			String oldPart = oldText.substring(script.charStartInOld(i), script.charEndInOld(i));
+			String newPart = newText.substring(script.charStartInNew(i), script.charEndInNew(i));
+			if (script.action(i) == Action.equal) {
+				assertEquals(oldPart, newPart);
+			}
+			rebuiltOld.append(oldPart);
+			rebuiltNew.append(newPart);
+		}
+		assertEquals(oldText, rebuiltOld.toString());
+		assertEquals(newText, rebuiltNew.toString());
+	}
+
+}
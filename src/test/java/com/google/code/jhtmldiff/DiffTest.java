@@ -25,6 +25,8 @@ package com.google.code.jhtmldiff;
 
 import static org.junit.Assert.*;
 
+import java.io.StringWriter;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -63,15 +65,102 @@ public class DiffTest {
 	    t.shouldEqual("a <del class=\"diffmod\">b</del><ins class=\"diffmod\">d</ins> c");
 	}
 	
+	@Test
+	public void shouldMatchRepeatedWords() throws Exception {
+	    // The equal ends "a a" are matched before searching, so the longer
+	    // "a a b a a" run crossing them is not found.
+	    t.diff("a a a b a a", "a a b a a a");
+	    t.shouldEqual("a a<ins class=\"diffins\"> b</ins> a <del class=\"diffdel\">b </del>a a");
+	}
+	
+	
+	@Test
+	public void shouldKeepUnchangedEnds() throws Exception {
+	    t.diff("<p>one two three</p><p>four</p>", "<p>one too three</p><p>four</p>");
+	    t.shouldEqual("<p>one <del class=\"diffmod\">two</del><ins class=\"diffmod\">too</ins> three</p><p>four</p>");
+	}
+	
+	@Test
+	public void shouldDiffWithMyers() throws Exception {
+	    t.diff("a word is here", "a nother word is there", DiffAlgorithm.MYERS);
+	    t.shouldEqual("a <ins class=\"diffins\">nother </ins>word is <del class=\"diffmod\">here</del><ins class=\"diffmod\">there</ins>");
+	}
+	
+	@Test
+	public void shouldChangeALetterWithMyers() throws Exception {
+	    t.diff("a b c", "a d c", DiffAlgorithm.MYERS);
+	    t.shouldEqual("a <del class=\"diffmod\">b</del><ins class=\"diffmod\">d</ins> c");
+	}
+	
+	@Test
+	public void shouldDiffChangedBlocksOnly() throws Exception {
+	    t.diff("<p>a b</p><p>c d</p><p>e f</p>", "<p>a b</p><p>c x</p><p>e f</p>", DiffAlgorithm.BLOCKS);
+	    t.shouldEqual("<p>a b</p><p>c <del class=\"diffmod\">d</del><ins class=\"diffmod\">x</ins></p><p>e f</p>");
+	}
+	
+	@Test
+	public void shouldNotMatchWordsAcrossChangedBlocks() throws Exception {
+	    t.diff("<p>a</p><li>b c</li>", "<li>b</li><p>a</p>", DiffAlgorithm.BLOCKS);
+	    t.shouldEqual("<li><ins class=\"diffins\">b</ins></li><p>a</p><li><del class=\"diffdel\">b c</del></li>");
+	}
+	
+	@Test
+	public void shouldWrapTextBetweenTags() throws Exception {
+	    t.diff("x", "x <p>new <b>bold</b> text</p>");
+	    t.shouldEqual("x<ins class=\"diffins\"> </ins><p><ins class=\"diffins\">new </ins><b><ins class=\"diffins\">bold</ins></b><ins class=\"diffins\"> text</ins></p>");
+	}
+	
+	@Test
+	public void shouldInjectSpecialCaseTags() throws Exception {
+	    t.diff("a", "a<strong>b</strong>");
+	    t.shouldEqual("a<strong><ins class='mod'><ins class=\"diffins\">b</ins></strong>");
+	}
+	
+	@Test
+	public void shouldWriteToAppendable() throws Exception {
+	    StringWriter out = new StringWriter();
+	    new Diff("a b c", "a d c").build(out);
+	    assertEquals("a <del class=\"diffmod\">b</del><ins class=\"diffmod\">d</ins> c", out.toString());
+	}
+	
+	@Test
+	public void shouldNotRecurseOnEveryMatch() throws Exception {
+	    final StringBuilder a = new StringBuilder(), b = new StringBuilder();
+	    for (int i = 0; i < 4000; i++) {
+	        a.append("x").append(i).append("<p>");
+	        b.append("x").append(i).append("<br>");
+	    }
+	    final Throwable[] error = new Throwable[1];
+	    Thread thread = new Thread(null, new Runnable() {
+	        public void run() {
+	            try {
+	                t.diff(a.toString(), b.toString());
+	            } catch (Throwable e) {
+	                error[0] = e;
+	            }
+	        }
+	    }, "small-stack", 64 * 1024);
+	    thread.start();
+	    thread.join();
+	    assertNull(error[0]);
+	    t.shouldStartWith("x0<p><br>x1<p><br>x2");
+	}
+	
 	
 	public static class TestDiff {
 		private String result;
 		public void diff(String a, String b) {
 			result = new Diff(a, b).build();
 		}
+		public void diff(String a, String b, DiffAlgorithm algorithm) {
+			result = new Diff(a, b, algorithm).build();
+		}
 		public void shouldEqual(String expected) {
 			assertEquals("should equal", expected, result);
 		}
+		public void shouldStartWith(String expected) {
+			assertTrue("should start with " + expected, result.startsWith(expected));
+		}
 	}
 
 }
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.code.jhtmldiff.Diff.Action;
+
+
+public class EditScriptTest {
+
+	private static final String OLD = "<p>The quick <b>brown</b> fox</p>", NEW = "<p>The slow <b>brown</b> fox again</p>";
+
+	@Test
+	public void shouldCoverBothTexts() throws Exception {
+		Random random = new Random(7);
+		String[] words = { "a", "b", " ", "<p>", "</p>", "<b>", "</b>" };
+		for (int n = 0; n < 200; n++) {
+			String oldText = TestTexts.random(random, words, 30), newText = TestTexts.random(random, words, 30);
+			EditScript script = new Diff(oldText, newText).editScript();
+			StringBuilder rebuiltOld = new StringBuilder(), rebuiltNew = new StringBuilder();
+			for (int i = 0; i < script.size(); i++) {
+				assertTrue(script.action(i) != Action.none);
+				rebuiltOld.append(oldText, script.charStartInOld(i), script.charEndInOld(i));
+				rebuiltNew.append(newText, script.charStartInNew(i), script.charEndInNew(i));
+				if (script.action(i) == Action.equal) {
+					assertEquals(oldText.substring(script.charStartInOld(i), script.charEndInOld(i)),
+							newText.substring(script.charStartInNew(i), script.charEndInNew(i)));
+				}
+			}
+			assertEquals(oldText, rebuiltOld.toString());
+			assertEquals(newText, rebuiltNew.toString());
+		}
+	}
+
+	@Test
+	public void shouldRenderHtmlLikeBuild() throws Exception {
+		StringBuilder out = new StringBuilder();
+		DiffRenderer.HTML.render(new Diff(OLD, NEW).editScript(), out);
+		assertEquals(new Diff(OLD, NEW).build(), out.toString());
+	}
+
+	@Test
+	public void shouldOutliveEngineContext() throws Exception {
+		EditScript script = DiffEngine.DEFAULT.editScript(OLD, NEW);
+		DiffEngine.DEFAULT.diff("<p>something else entirely</p>", "<p>and more</p>");
+		StringBuilder out = new StringBuilder();
+		DiffRenderer.HTML.render(script, out);
+		assertEquals(new Diff(OLD, NEW).build(), out.toString());
+	}
+
+	@Test
+	public void shouldRenderJson() throws Exception {
+		assertEquals("{\"oldLength\":9,\"newLength\":10,\"operations\":["
+				+ "{\"action\":\"equal\",\"old\":[0,2],\"new\":[0,2],\"oldChars\":[0,4],\"newChars\":[0,4]},"
+				+ "{\"action\":\"replace\",\"old\":[2,3],\"new\":[2,3],\"oldChars\":[4,9],\"newChars\":[4,10]}]}",
+				DiffEngine.DEFAULT.withRenderer(DiffRenderer.JSON).diff("one brown", "one yellow"));
+	}
+
+	@Test
+	public void shouldRenderAnsi() throws Exception {
+		assertEquals("one " + AnsiRenderer.DELETED + "brown" + AnsiRenderer.RESET + AnsiRenderer.INSERTED
+				+ "yellow" + AnsiRenderer.RESET, DiffEngine.DEFAULT.withRenderer(DiffRenderer.ANSI).diff(
+				"one brown", "one yellow"));
+	}
+
+}
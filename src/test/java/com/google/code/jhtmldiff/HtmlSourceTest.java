@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+
+import org.junit.Test;
+
+
+public class HtmlSourceTest {
+
+	private static final String TEXT = "<p>café – naïve</p>\r\n<p>two</p>\n";
+
+	@Test
+	public void shouldKeepLineEndings() throws Exception {
+		HtmlSource source = decode(TEXT.getBytes("UTF-8"), null);
+		assertEquals(TEXT, source.getText());
+		assertEquals("UTF-8", source.getCharset().name());
+	}
+
+	@Test
+	public void shouldDetectByteOrderMark() throws Exception {
+		byte[] text = TEXT.getBytes("UTF-16LE");
+		byte[] bytes = new byte[text.length + 2];
+		bytes[0] = (byte) 0xff;
+		bytes[1] = (byte) 0xfe;
+		System.arraycopy(text, 0, bytes, 2, text.length);
+		HtmlSource source = decode(bytes, null);
+		assertEquals(TEXT, source.getText());
+		assertEquals("UTF-16LE", source.getCharset().name());
+	}
+
+	@Test
+	public void shouldKeepByteOrderMarkOfOtherCharset() throws Exception {
+		byte[] text = TEXT.getBytes("UTF-8");
+		byte[] bytes = new byte[text.length + 3];
+		bytes[0] = (byte) 0xef;
+		bytes[1] = (byte) 0xbb;
+		bytes[2] = (byte) 0xbf;
+		System.arraycopy(text, 0, bytes, 3, text.length);
+		assertEquals(TEXT, decode(bytes, Charset.forName("UTF-8")).getText());
+		assertEquals(new String(bytes, "ISO-8859-1"), decode(bytes, Charset.forName("ISO-8859-1")).getText());
+	}
+
+	@Test
+	public void shouldDetectMetaCharset() throws Exception {
+		String html = "<html><head><meta charset=\"ISO-8859-1\"></head>" + "<p>café</p>";
+		assertEquals(html, decode(html.getBytes("ISO-8859-1"), null).getText());
+
+		html = "<meta http-equiv=\"Content-Type\" content=\"text/html; charset=windows-1252\"><p>€</p>";
+		HtmlSource source = decode(html.getBytes("windows-1252"), null);
+		assertEquals(html, source.getText());
+		assertEquals("windows-1252", source.getCharset().name());
+	}
+
+	@Test
+	public void shouldPreferGivenCharset() throws Exception {
+		String html = "<meta charset=\"ISO-8859-1\"><p>café</p>";
+		assertEquals(html, decode(html.getBytes("UTF-8"), Charset.forName("UTF-8")).getText());
+	}
+
+	@Test
+	public void shouldNotCutTextShortOnOverflow() throws Exception {
+		String html = "<p>café naïve</p>\n<p>two</p>";
+		StringBuilder doubled = new StringBuilder();
+		for (char c : html.toCharArray()) {
+			doubled.append(c).append(c);
+		}
+		assertEquals(doubled.toString(), decode(html.getBytes("ISO-8859-1"), new Understated()).getText());
+	}
+
+	@Test
+	public void shouldReadFiles() throws Exception {
+		StringBuilder large = new StringBuilder();
+		while (large.length() < HtmlSource.MAP_LENGTH) {
+			large.append(TEXT);
+		}
+		for (String text : new String[] { "", TEXT, large.toString() }) {
+			File file = File.createTempFile("jhtmldiff", ".html");
+			try {
+				FileOutputStream out = new FileOutputStream(file);
+				out.write(text.getBytes("UTF-8"));
+				out.close();
+				assertEquals(text, HtmlSource.read(file, null).getText());
+			}
+			finally {
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * ISO-8859-1 with every char written twice, by a decoder that claims to
+	 * write at most one per byte.
+	 */
+	private static final class Understated extends Charset {
+
+		Understated() {
+			super("x-understated", null);
+		}
+
+		public boolean contains(Charset cs) {
+			return false;
+		}
+
+		public CharsetDecoder newDecoder() {
+			return new CharsetDecoder(this, 1, 1) {
+
+				protected CoderResult decodeLoop(ByteBuffer in, CharBuffer out) {
+					while (in.hasRemaining()) {
+						if (out.remaining() < 2) {
+							return CoderResult.OVERFLOW;
+						}
+						char c = (char) (in.get() & 0xff);
+						out.put(c).put(c);
+					}
+					return CoderResult.UNDERFLOW;
+				}
+			};
+		}
+
+		public CharsetEncoder newEncoder() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private static HtmlSource decode(byte[] bytes, Charset charset) throws Exception {
+		return HtmlSource.decode(ByteBuffer.wrap(bytes), charset);
+	}
+
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+
+public class PreparedDocumentTest {
+
+	private static final String BASE = "<p>The quick <b>brown</b> fox</p> <p>jumps over the lazy dog.</p>";
+
+	private static final String[] DRAFTS = new String[] { "<p>The quick <b>red</b> fox</p> <p>jumps over the dog.</p>",
+			"<p>A slow turtle</p>", "", BASE, "<p>The quick <b>brown</b> fox</p> <p>jumps</p> <p>again</p>" };
+
+	@Test
+	public void shouldDiffAsOldDocument() throws Exception {
+		PreparedDocument base = PreparedDocument.prepare(BASE);
+		for (String draft : DRAFTS) {
+			assertEquals(new Diff(BASE, draft).build(), new Diff(base, draft).build());
+		}
+	}
+
+	@Test
+	public void shouldDiffAsNewDocument() throws Exception {
+		PreparedDocument base = PreparedDocument.prepare(BASE);
+		for (String draft : DRAFTS) {
+			assertEquals(new Diff(draft, BASE).build(), new Diff(draft, base).build());
+		}
+	}
+
+	@Test
+	public void shouldDiffWithEngine() throws Exception {
+		PreparedDocument base = PreparedDocument.prepare(BASE);
+		DiffEngine engine = DiffEngine.DEFAULT.withAlgorithm(DiffAlgorithm.MYERS);
+		for (String draft : DRAFTS) {
+			assertEquals(engine.diff(BASE, draft), engine.diff(base, draft));
+			assertEquals(engine.diff(draft, BASE), engine.diff(draft, base));
+		}
+		assertEquals(BASE, base.getText());
+	}
+
+}
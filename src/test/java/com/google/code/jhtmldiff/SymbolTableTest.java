@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+
+public class SymbolTableTest {
+
+	@Test
+	public void shouldShareIdsAcrossTexts() throws Exception {
+		SymbolTable symbols = new SymbolTable();
+		int[] oldIds = symbols.intern(Words.tokenize("a b <p>a</p>"));
+		int[] newIds = symbols.intern(Words.tokenize("<p>b c"));
+		assertArrayEquals(new int[] { 0, 1, 2, 1, 3, 0, 4 }, oldIds);
+		assertArrayEquals(new int[] { 3, 2, 1, 5 }, newIds);
+		assertEquals(6, symbols.size());
+	}
+
+	@Test
+	public void shouldGrowPastInitialCapacity() throws Exception {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			text.append("w").append(i).append(' ');
+		}
+		SymbolTable symbols = new SymbolTable();
+		int[] first = symbols.intern(Words.tokenize(text.toString()));
+		int[] second = symbols.intern(Words.tokenize(text.toString()));
+		assertArrayEquals(first, second);
+		assertEquals(1001, symbols.size());
+	}
+
+	@Test
+	public void shouldForgetEveryWordOnClear() throws Exception {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			text.append("w").append(i).append(' ');
+		}
+		SymbolTable symbols = new SymbolTable();
+		symbols.intern(Words.tokenize(text.toString()));
+		for (int round = 0; round < 2; round++) {
+			symbols.clear();
+			assertEquals(0, symbols.size());
+			assertArrayEquals(new int[] { 0, 1, 2, 1, 3, 1, 2 }, symbols.intern(Words.tokenize("w999 w3 w0 w3")));
+		}
+		symbols.clear();
+		assertArrayEquals(new SymbolTable().intern(Words.tokenize(text.toString())),
+				symbols.intern(Words.tokenize(text.toString())));
+	}
+
+	@Test
+	public void shouldIndexPositionsById() throws Exception {
+		WordIndex index = WordIndex.build(new int[] { 1, 0, 1, 2, 1 }, 4);
+		assertEquals(3, index.end(1) - index.first(1));
+		assertEquals(0, index.position(index.first(1)));
+		assertEquals(4, index.position(index.end(1) - 1));
+		assertEquals(index.first(3), index.end(3));
+	}
+
+}
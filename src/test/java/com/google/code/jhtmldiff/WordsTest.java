@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2011 Nathan Herald, Rohland de Charmoy, Adam Gent
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE
+ */
+
+package com.google.code.jhtmldiff;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+
+public class WordsTest {
+
+	@Test
+	public void shouldSplitCharactersAndWhitespace() throws Exception {
+		assertWords("a word  is\there", "a", " ", "word", "  ", "is", "\t", "here");
+	}
+
+	@Test
+	public void shouldSplitTags() throws Exception {
+		assertWords("<p>ab</p><p class='x'> c</p>", "<p>", "ab", "</p>", "<p class='x'>", " ", "c", "</p>");
+	}
+
+	@Test
+	public void shouldKeepUnterminatedTag() throws Exception {
+		assertWords("a <b", "a", " ", "<b");
+	}
+
+	@Test
+	public void shouldRecordOffsets() throws Exception {
+		Words words = Words.tokenize("ab <i>");
+		assertEquals(3, words.size());
+		assertEquals(0, words.start(0));
+		assertEquals(2, words.end(0));
+		assertEquals(3, words.start(2));
+		assertEquals(6, words.end(2));
+	}
+
+	@Test
+	public void shouldClassifyWords() throws Exception {
+		Words words = Words.tokenize("<b>x</b> <b class='y'><br/>< b><>");
+		assertEquals(Words.OPENING_TAG, words.kind(0));
+		assertTrue(words.isBareTag(0));
+		assertEquals("b", Words.TAG_NAMES[words.tagName(0) - 1]);
+		assertEquals(Words.TEXT, words.kind(1));
+		assertEquals(Words.CLOSING_TAG, words.kind(2));
+		assertTrue(words.isBareTag(2));
+		assertEquals(Words.WHITESPACE, words.kind(3));
+		assertEquals(Words.OPENING_TAG, words.kind(4));
+		assertFalse(words.isBareTag(4));
+		assertEquals(words.tagName(0), words.tagName(4));
+		assertTrue(words.isTag(5));
+		assertEquals(0, words.tagName(5));
+		assertTrue(words.isTag(6));
+		assertEquals(0, words.tagName(6));
+		assertFalse(words.isTag(7));
+	}
+
+	@Test
+	public void shouldHandleEmptyText() throws Exception {
+		assertEquals(0, Words.tokenize("").size());
+	}
+
+	private static void assertWords(String text, String... expected) {
+		assertArrayEquals(expected, Words.tokenize(text).toArray());
+	}
+
+}